@@ -1,5 +1,6 @@
 // <snippet_imports>
 import com.google.gson.*;
+import com.google.gson.stream.JsonWriter;
 
 import com.microsoft.azure.cognitiveservices.vision.contentmoderator.*;
 import com.microsoft.azure.cognitiveservices.vision.contentmoderator.models.*;
@@ -56,15 +57,20 @@ public class ContentModeratorQuickstart {
         // </snippet_client>
 
         // <snippet_imagemod_iterate>
-        // Create an object in which to store the image moderation results.
-        List<EvaluationData> evaluationData = new ArrayList<EvaluationData>();
-        
+        // Write each image moderation result to the output file as soon as it is available.
+        // ModerationOutput.json is the file to contain the output from the evaluation.
+        // Relative paths are relative to the execution directory.
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
         /**
          * Read image URLs from the input file and evaluate/moderate each one.
          */
         // ImageFiles.txt is the file that contains the image URLs to evaluate.
         // Relative paths are relative to the execution directory.
-        try (BufferedReader inputStream = new BufferedReader(new FileReader(new File("src\\main\\resources\\ImageFiles.txt")))){
+        try (BufferedReader inputStream = new BufferedReader(new FileReader(new File("src\\main\\resources\\ImageFiles.txt")));
+             JsonWriter writer = new JsonWriter(new BufferedWriter(new FileWriter(new File("src\\main\\resources\\ModerationOutput.json"))))) {
+            writer.setIndent("  ");
+            writer.beginArray();
             String line;
             while ((line = inputStream.readLine()) != null) {
                 if (line.length() > 0) {
@@ -95,20 +101,17 @@ public class ContentModeratorQuickstart {
                     // </snippet_imagemod_faces>
 
                     // <snippet_imagemod_storedata>
-                    evaluationData.add(imageData);
+                    // Save the moderation results for this image to the file.
+                    System.out.println("adding imageData to file: " + gson.toJson(imageData));
+                    gson.toJson(imageData, EvaluationData.class, writer);
+                    writer.flush();
                 }
             }
             // </snippet_imagemod_storedata>
 
             // <snippet_imagemod_printdata>
-            // Save the moderation results to a file.
-            // ModerationOutput.json is the file to contain the output from the evaluation.
-            // Relative paths are relative to the execution directory.
-            BufferedWriter writer = new BufferedWriter(new FileWriter(new File("src\\main\\resources\\ModerationOutput.json")));
-            Gson gson = new GsonBuilder().setPrettyPrinting().create();            
-            System.out.println("adding imageData to file: " + gson.toJson(evaluationData).toString());
-            writer.write(gson.toJson(evaluationData).toString());
-            writer.close();
+            // Close the JSON array; the writer is closed when the try block exits.
+            writer.endArray();
             // </snippet_imagemod_printdata>
 
         // <snippet_imagemod_catch>
@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ContentModeratorClientImpl;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.CreateReviewBodyItemInner;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ReviewInner;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Creates and fetches reviews in bulk.
+ * Review items are split into chunks of at most the configured size, one
+ * createReviews request per chunk, and the chunks are sent concurrently.
+ * Review details are fetched concurrently as well. The number of requests in
+ * flight is bounded by the number of threads, and their rate by the rate
+ * limiter of the client (see {@link Samples#getClient(String, RateLimiter)}).
+ * A failed request does not fail the batch: the results report the items or
+ * reviews it covered.
+ */
+public class BatchReviews implements Closeable {
+    /**
+     * The outcome of a batch of review creations.
+     */
+    public static class CreateResult {
+        /*
+         * The review ID of each item, in the order of the items; null for the items that failed.
+         */
+        public List<String> ReviewIds;
+
+        /*
+         * The items that could not be submitted, and the error for each, indexed by position.
+         */
+        public Map<Integer, Exception> Failed;
+    }
+
+    /**
+     * The outcome of a batch of review detail requests.
+     */
+    public static class DetailsResult {
+        /*
+         * The details of each review, in the order of the review IDs; null for the reviews that failed.
+         */
+        public List<ReviewInner> Reviews;
+
+        /*
+         * The reviews that could not be fetched, and the error for each, indexed by review ID.
+         */
+        public Map<String, Exception> Failed;
+    }
+
+    /*
+     * The default number of review items sent per request.
+     */
+    private static final int DefaultChunkSize = 100;
+
+    private final ContentModeratorClientImpl client;
+
+    private final String teamName;
+
+    private final int chunkSize;
+
+    private final ExecutorService executor;
+
+    /**
+     * Creates a batch client that sends 100 items per request.
+     * @param client The Content Moderator client.
+     * @param teamName The name of your review team.
+     * @param threads The maximum number of requests in flight.
+     */
+    public BatchReviews(ContentModeratorClientImpl client, String teamName, int threads) {
+        this(client, teamName, threads, DefaultChunkSize);
+    }
+
+    /**
+     * Creates a batch client.
+     * @param client The Content Moderator client.
+     * @param teamName The name of your review team.
+     * @param threads The maximum number of requests in flight.
+     * @param chunkSize The maximum number of review items sent per request.
+     */
+    public BatchReviews(ContentModeratorClientImpl client, String teamName, int threads, int chunkSize) {
+        if (threads < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("threads and chunkSize must be at least 1.");
+        }
+        this.client = client;
+        this.teamName = teamName;
+        this.chunkSize = chunkSize;
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "batch-reviews-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Creates a review for every item.
+     * @param items The review items.
+     * @return a future that completes when every chunk was submitted or has failed
+     */
+    public CompletableFuture<CreateResult> createReviews(List<CreateReviewBodyItemInner> items) {
+        final int total = items.size();
+        final AtomicReferenceArray<String> reviewIds = new AtomicReferenceArray<String>(total);
+        final Map<Integer, Exception> failed = new ConcurrentHashMap<Integer, Exception>();
+        List<CompletableFuture<Void>> calls = new ArrayList<CompletableFuture<Void>>();
+        for (int start = 0; start < total; start += chunkSize) {
+            final int first = start;
+            final List<CreateReviewBodyItemInner> chunk =
+                    new ArrayList<CreateReviewBodyItemInner>(items.subList(start, Math.min(total, start + chunkSize)));
+            calls.add(CompletableFuture.runAsync(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        List<String> ids = client.reviews().createReviews(teamName, "application/json", chunk);
+                        if (ids == null || ids.size() != chunk.size()) {
+                            throw new IllegalStateException("Expected " + chunk.size() + " review IDs, got "
+                                    + (ids == null ? 0 : ids.size()) + ".");
+                        }
+                        for (int i = 0; i < ids.size(); i++) {
+                            reviewIds.set(first + i, ids.get(i));
+                        }
+                    } catch (Exception e) {
+                        for (int i = 0; i < chunk.size(); i++) {
+                            failed.put(first + i, e);
+                        }
+                    }
+                }
+            }, executor));
+        }
+
+        return CompletableFuture.allOf(calls.toArray(new CompletableFuture[calls.size()]))
+                .thenApply(new Function<Void, CreateResult>() {
+                    @Override
+                    public CreateResult apply(Void ignored) {
+                        String[] ids = new String[total];
+                        for (int i = 0; i < total; i++) {
+                            ids[i] = reviewIds.get(i);
+                        }
+                        CreateResult result = new CreateResult();
+                        result.ReviewIds = Collections.unmodifiableList(Arrays.asList(ids));
+                        result.Failed = Collections.unmodifiableMap(failed);
+                        return result;
+                    }
+                });
+    }
+
+    /**
+     * Fetches the details of reviews.
+     * @param reviewIds The IDs of the reviews.
+     * @return a future that completes when every review was fetched or has failed
+     */
+    public CompletableFuture<DetailsResult> getReviews(List<String> reviewIds) {
+        final int total = reviewIds.size();
+        final AtomicReferenceArray<ReviewInner> reviews = new AtomicReferenceArray<ReviewInner>(total);
+        final Map<String, Exception> failed = new ConcurrentHashMap<String, Exception>();
+        List<CompletableFuture<Void>> calls = new ArrayList<CompletableFuture<Void>>(total);
+        for (int i = 0; i < total; i++) {
+            final int index = i;
+            final String reviewId = reviewIds.get(i);
+            if (reviewId == null) {
+                continue;
+            }
+            calls.add(CompletableFuture.runAsync(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        reviews.set(index, client.reviews().getReview(teamName, reviewId));
+                    } catch (Exception e) {
+                        failed.put(reviewId, e);
+                    }
+                }
+            }, executor));
+        }
+
+        return CompletableFuture.allOf(calls.toArray(new CompletableFuture[calls.size()]))
+                .thenApply(new Function<Void, DetailsResult>() {
+                    @Override
+                    public DetailsResult apply(Void ignored) {
+                        ReviewInner[] details = new ReviewInner[total];
+                        for (int i = 0; i < total; i++) {
+                            details[i] = reviews.get(i);
+                        }
+                        DetailsResult result = new DetailsResult();
+                        result.Reviews = Collections.unmodifiableList(Arrays.asList(details));
+                        result.Failed = Collections.unmodifiableMap(failed);
+                        return result;
+                    }
+                });
+    }
+
+    /**
+     * Stops the threads of the batch client. Requests in flight are abandoned.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
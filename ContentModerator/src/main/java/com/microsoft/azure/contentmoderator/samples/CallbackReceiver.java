@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.rest.serializer.JacksonAdapter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Receives the callbacks that the review tool POSTs when a job or a review
+ * completes, so that the samples do not need to poll for results.
+ * Pass the public URL that reaches the receiver as the callback endpoint of
+ * jobs and reviews, then wait on {@link #awaitJob(String)} or
+ * {@link #awaitReview(String)}. A callback that arrives before anyone waits
+ * for it is kept until it is claimed, and forgotten once it is.
+ * The receiver runs on the HTTP server of the JDK, with a small thread pool;
+ * close it when done, since the server thread keeps the JVM alive.
+ * {@link CallbackStandIn} checks a receiver locally.
+ */
+public class CallbackReceiver implements Closeable {
+    /**
+     * A callback POSTed by the review tool.
+     */
+    public static class Callback {
+        /*
+         * "Job" or "Review".
+         */
+        public String CallBackType;
+
+        /*
+         * The ID of the job, for job callbacks.
+         */
+        public String JobId;
+
+        /*
+         * The ID of the review created by the job, or of the completed review.
+         */
+        public String ReviewId;
+
+        /*
+         * The ID of the content that was reviewed.
+         */
+        public String ContentId;
+
+        /*
+         * The status of the job, for job callbacks.
+         */
+        public String Status;
+
+        /*
+         * The full callback, including the review results.
+         */
+        public JsonNode Body;
+    }
+
+    private static final String JobPrefix = "job:";
+
+    private static final String ReviewPrefix = "review:";
+
+    private final ObjectMapper mapper = new JacksonAdapter().serializer();
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    /*
+     * The callbacks received or awaited, indexed by job or review ID.
+     */
+    private final ConcurrentMap<String, CompletableFuture<Callback>> callbacks =
+            new ConcurrentHashMap<String, CompletableFuture<Callback>>();
+
+    /**
+     * Starts a receiver.
+     * @param port the local port to listen on, or 0 to pick a free port
+     * @throws IOException if the port cannot be bound
+     */
+    public CallbackReceiver(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    exchange.sendResponseHeaders(receive(exchange), -1);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        final AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "callback-receiver-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return the local port the receiver listens on
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @param jobId the ID of a job created with this receiver as its callback endpoint
+     * @return a future that completes when the callback for the job is received
+     */
+    public CompletableFuture<Callback> awaitJob(String jobId) {
+        return await(JobPrefix + jobId);
+    }
+
+    /**
+     * @param reviewId the ID of a review created with this receiver as its callback endpoint
+     * @return a future that completes when the callback for the review is received
+     */
+    public CompletableFuture<Callback> awaitReview(String reviewId) {
+        return await(ReviewPrefix + reviewId);
+    }
+
+    /**
+     * Stops the receiver. Pending futures are left incomplete.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /*
+     * Returns the future of a callback, and forgets it once it is both awaited and received.
+     */
+    private CompletableFuture<Callback> await(final String key) {
+        final CompletableFuture<Callback> callback = slot(key);
+        callback.whenComplete(new BiConsumer<Callback, Throwable>() {
+            @Override
+            public void accept(Callback received, Throwable error) {
+                callbacks.remove(key, callback);
+            }
+        });
+        return callback;
+    }
+
+    private CompletableFuture<Callback> slot(String key) {
+        CompletableFuture<Callback> callback = new CompletableFuture<Callback>();
+        CompletableFuture<Callback> existing = callbacks.putIfAbsent(key, callback);
+        return existing != null ? existing : callback;
+    }
+
+    /*
+     * Parses a callback and completes its future. Returns the HTTP status of the response.
+     */
+    private int receive(HttpExchange exchange) throws IOException {
+        if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+            return 405;
+        }
+        JsonNode body;
+        try (InputStream input = exchange.getRequestBody()) {
+            body = mapper.readTree(input);
+        } catch (IOException e) {
+            return 400;
+        }
+        if (body == null || !body.isObject()) {
+            return 400;
+        }
+
+        Callback callback = new Callback();
+        callback.CallBackType = text(body, "CallBackType");
+        callback.JobId = text(body, "JobId");
+        callback.ReviewId = text(body, "ReviewId");
+        callback.ContentId = text(body, "ContentId");
+        callback.Status = text(body, "Status");
+        callback.Body = body;
+
+        String key;
+        boolean isJob = callback.CallBackType == null
+                ? callback.JobId != null
+                : "Job".equalsIgnoreCase(callback.CallBackType);
+        if (isJob && callback.JobId != null) {
+            key = JobPrefix + callback.JobId;
+        } else if (isJob) {
+            return 400;
+        } else if (callback.ReviewId != null) {
+            key = ReviewPrefix + callback.ReviewId;
+        } else {
+            return 400;
+        }
+        slot(key).complete(callback);
+        return 200;
+    }
+
+    private static String text(JsonNode body, String field) {
+        JsonNode value = body.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+}
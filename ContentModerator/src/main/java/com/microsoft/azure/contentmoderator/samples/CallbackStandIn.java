@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stands in for the review tool, to check a {@link CallbackReceiver} locally
+ * without a public URL or a review team.
+ * Run it as a program: it starts a receiver on a free port, POSTs the job and
+ * review callbacks the review tool would send, and fails unless the futures
+ * of the receiver complete with them. The job callback is posted before the
+ * job is awaited, as happens when a job completes before createJob returns.
+ */
+public class CallbackStandIn {
+    /*
+     * How long, in seconds, to wait for a posted callback to complete its future.
+     */
+    private static final int Timeout = 10;
+
+    /*
+     * A job callback, in the format posted by the review tool.
+     */
+    static final String JobCallback = "{"
+            + "\"JobId\": \"2018014caceddebfe9446fab29056fd8d31ffe\","
+            + "\"ReviewId\": \"201801i28fc0f7cbf424447846e509af853ea54\","
+            + "\"WorkFlowId\": \"default\","
+            + "\"Status\": \"Complete\","
+            + "\"ContentType\": \"Image\","
+            + "\"ContentId\": \"contentID\","
+            + "\"CallBackType\": \"Job\","
+            + "\"Metadata\": {\"adultscore\": \"0.00991\", \"isadult\": \"False\"}"
+            + "}";
+
+    /*
+     * A review callback, in the format posted by the review tool.
+     */
+    static final String ReviewCallback = "{"
+            + "\"ReviewId\": \"201801i28fc0f7cbf424447846e509af853ea54\","
+            + "\"ModifiedOn\": \"2018-01-22T22:52:38.9183009Z\","
+            + "\"ModifiedBy\": \"Reviewer\","
+            + "\"CallBackType\": \"Review\","
+            + "\"ContentId\": \"0\","
+            + "\"ContentType\": \"Image\","
+            + "\"Metadata\": {\"sc\": \"true\"},"
+            + "\"ReviewerResultTags\": {\"a\": \"False\", \"r\": \"True\"}"
+            + "}";
+
+    /**
+     * POSTs a callback to a receiver.
+     * @param url the URL of the receiver
+     * @param body the JSON body of the callback
+     * @return the HTTP status of the response
+     * @throws IOException if the callback cannot be sent
+     */
+    public static int post(URL url, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setFixedLengthStreamingMode(bytes.length);
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(bytes);
+            }
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Main entry point.
+     * @param args the parameters
+     * @throws Exception if a callback is not received as expected
+     */
+    public static void main(String[] args) throws Exception {
+        try (CallbackReceiver receiver = new CallbackReceiver(0)) {
+            URL url = new URL("http://localhost:" + receiver.port() + "/");
+
+            // The job callback arrives before anyone waits for it.
+            check(post(url, JobCallback) == 200, "The job callback was not accepted.");
+            CallbackReceiver.Callback job = receive(receiver.awaitJob("2018014caceddebfe9446fab29056fd8d31ffe"));
+            check("Complete".equals(job.Status), "Unexpected job status " + job.Status + ".");
+            check("201801i28fc0f7cbf424447846e509af853ea54".equals(job.ReviewId),
+                    "Unexpected review ID " + job.ReviewId + ".");
+            System.out.println("Received the job callback posted before the job was awaited.");
+
+            // The review callback arrives while the review is awaited.
+            CompletableFuture<CallbackReceiver.Callback> review =
+                    receiver.awaitReview("201801i28fc0f7cbf424447846e509af853ea54");
+            check(!review.isDone(), "The review completed before its callback was posted.");
+            check(post(url, ReviewCallback) == 200, "The review callback was not accepted.");
+            CallbackReceiver.Callback received = receive(review);
+            check("0".equals(received.ContentId), "Unexpected content ID " + received.ContentId + ".");
+            check("True".equals(received.Body.get("ReviewerResultTags").get("r").asText()),
+                    "The review results were not kept.");
+            System.out.println("Received the review callback posted while the review was awaited.");
+
+            check(post(url, "not json") == 400, "A malformed callback was accepted.");
+            System.out.println("Rejected a malformed callback.");
+        }
+    }
+
+    private static CallbackReceiver.Callback receive(CompletableFuture<CallbackReceiver.Callback> callback)
+            throws Exception {
+        return callback.get(Timeout, TimeUnit.SECONDS);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ContentModeratorClientImpl;
+import com.microsoft.rest.credentials.ServiceClientCredentials;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a ContentModeratorClientImpl with control over the HTTP connections
+ * it uses: the number of concurrent requests, the connection pool, HTTP/2
+ * and TLS session reuse. Build one client and share it between all the
+ * samples, so that connections and TLS sessions are reused.
+ */
+public class ContentModeratorClientBuilder {
+    private String subscriptionKey;
+
+    private String endpoint = System.getenv("CONTENT_MODERATOR_ENDPOINT");
+
+    private RateLimiter limiter;
+
+    private int maxRequests = 64;
+
+    private int maxRequestsPerHost = 16;
+
+    private int maxIdleConnections = 16;
+
+    private long keepAlive = TimeUnit.MINUTES.toMillis(5);
+
+    private boolean http2 = true;
+
+    private int tlsSessionCacheSize = -1;
+
+    private int tlsSessionTimeout = -1;
+
+    /**
+     * @param subscriptionKey cognitive services content moderator subscription key
+     * @return the builder
+     */
+    public ContentModeratorClientBuilder withSubscriptionKey(String subscriptionKey) {
+        this.subscriptionKey = subscriptionKey;
+        return this;
+    }
+
+    /**
+     * @param endpoint the Content Moderator endpoint, for example
+     *                 https://westus.api.cognitive.microsoft.com; defaults to
+     *                 the CONTENT_MODERATOR_ENDPOINT environment variable
+     * @return the builder
+     */
+    public ContentModeratorClientBuilder withEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+        return this;
+    }
+
+    /**
+     * @param limiter the rate limiter that paces the requests of the client;
+     *                defaults to 1 request per second
+     * @return the builder
+     */
+    public ContentModeratorClientBuilder withRateLimiter(RateLimiter limiter) {
+        this.limiter = limiter;
+        return this;
+    }
+
+    /**
+     * @param maxRequests the maximum number of asynchronous requests in flight
+     * @param maxRequestsPerHost the maximum number of asynchronous requests in
+     *                           flight to the Content Moderator endpoint
+     * @return the builder
+     */
+    public ContentModeratorClientBuilder withMaxRequests(int maxRequests, int maxRequestsPerHost) {
+        this.maxRequests = maxRequests;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        return this;
+    }
+
+    /**
+     * @param maxIdleConnections the number of idle connections kept open for reuse
+     * @param keepAlive how long an idle connection is kept open
+     * @param unit the unit of keepAlive
+     * @return the builder
+     */
+    public ContentModeratorClientBuilder withConnectionPool(int maxIdleConnections, long keepAlive, TimeUnit unit) {
+        this.maxIdleConnections = maxIdleConnections;
+        this.keepAlive = unit.toMillis(keepAlive);
+        return this;
+    }
+
+    /**
+     * @param http2 true to prefer HTTP/2 when the endpoint supports it,
+     *              false to only use HTTP/1.1
+     * @return the builder
+     */
+    public ContentModeratorClientBuilder withHttp2(boolean http2) {
+        this.http2 = http2;
+        return this;
+    }
+
+    /**
+     * Sets the size and timeout of the TLS session cache used to resume
+     * sessions instead of doing full handshakes. The client then gets its
+     * own SSLContext, with the default trust managers, so the cache only
+     * holds the sessions of this client.
+     * @param size the maximum number of cached sessions, 0 for no limit
+     * @param timeoutSeconds how long a session can be resumed, 0 for no limit
+     * @return the builder
+     */
+    public ContentModeratorClientBuilder withTlsSessionCache(int size, int timeoutSeconds) {
+        this.tlsSessionCacheSize = size;
+        this.tlsSessionTimeout = timeoutSeconds;
+        return this;
+    }
+
+    /**
+     * Makes an instance of the ContentModeratorClientImpl.
+     * @return ContentModeratorClientImpl instance
+     */
+    public ContentModeratorClientImpl build() {
+        if (subscriptionKey == null) {
+            throw new IllegalStateException("The subscription key is required.");
+        }
+        if (endpoint == null) {
+            throw new IllegalStateException("The endpoint is required.");
+        }
+        final X509TrustManager trustManager = defaultTrustManager();
+        final SSLContext sslContext = tlsContext(trustManager);
+
+        final String key = subscriptionKey;
+        final RateLimiter rateLimiter = limiter != null ? limiter : new RateLimiter(1);
+        final ConnectionPool connectionPool = new ConnectionPool(maxIdleConnections, keepAlive, TimeUnit.MILLISECONDS);
+        final Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        final boolean preferHttp2 = http2;
+
+        return new ContentModeratorClientImpl(
+                new ServiceClientCredentials() {
+                    @Override
+                    public void applyCredentialsFilter(OkHttpClient.Builder builder) {
+                        builder.connectionPool(connectionPool)
+                                .dispatcher(dispatcher)
+                                .protocols(preferHttp2
+                                        ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                                        : Collections.singletonList(Protocol.HTTP_1_1));
+                        if (sslContext != null) {
+                            builder.sslSocketFactory(sslContext.getSocketFactory(), trustManager);
+                        }
+                        // Pace the requests and retry the ones rejected with 429.
+                        builder.addInterceptor(new RateLimitingInterceptor(rateLimiter));
+                        builder.addNetworkInterceptor(
+                                new Interceptor() {
+                                    @Override
+                                    public Response intercept(Interceptor.Chain chain) throws IOException {
+                                        Request original = chain.request();
+                                        // Request customization: add request headers
+                                        Request request = original.newBuilder()
+                                                .addHeader("Ocp-Apim-Subscription-Key", key)
+                                                .build();
+                                        return chain.proceed(request);
+                                    }
+                                });
+                    }
+                }).withBaseUrl(endpoint);
+    }
+
+    /*
+     * Makes the SSLContext of the client with the configured session cache,
+     * or returns null to keep the one OkHttp makes.
+     */
+    private SSLContext tlsContext(X509TrustManager trustManager) {
+        if (tlsSessionCacheSize < 0 && tlsSessionTimeout < 0) {
+            return null;
+        }
+        SSLContext context;
+        try {
+            context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[] { trustManager }, null);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not make the SSLContext.", e);
+        }
+        SSLSessionContext sessions = context.getClientSessionContext();
+        if (tlsSessionCacheSize >= 0) {
+            sessions.setSessionCacheSize(tlsSessionCacheSize);
+        }
+        if (tlsSessionTimeout >= 0) {
+            sessions.setSessionTimeout(tlsSessionTimeout);
+        }
+        return context;
+    }
+
+    /*
+     * Returns the X509TrustManager of the default TrustManagerFactory, which
+     * trusts the certificates of the JVM's trust store.
+     */
+    private static X509TrustManager defaultTrustManager() {
+        try {
+            TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            factory.init((KeyStore) null);
+            for (TrustManager manager : factory.getTrustManagers()) {
+                if (manager instanceof X509TrustManager) {
+                    return (X509TrustManager) manager;
+                }
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not get the default trust manager.", e);
+        }
+        throw new IllegalStateException("The default trust managers have no X509TrustManager.");
+    }
+}
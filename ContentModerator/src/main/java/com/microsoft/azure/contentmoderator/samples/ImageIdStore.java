@@ -0,0 +1,349 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Maps image URLs to the content IDs assigned when the images were added to
+ * an image list, in a memory-mapped file that survives restarts.
+ * The map is an open-addressing hash table stored directly in the file: a
+ * 32-byte header followed by 16-byte slots holding the 64-bit hash of a URL,
+ * its content ID and the state of the slot. URLs themselves are not stored,
+ * so lists of hundreds of thousands of images take a few megabytes and are
+ * kept out of the Java heap.
+ * Changes reach the disk when the store is flushed or closed. When the table
+ * grows it is rebuilt in a temporary file that then replaces the store, so an
+ * interrupted run leaves either the old or the new table on disk. Mappings are
+ * released when the store is closed or rebuilt, since Windows does not replace
+ * a file that is still mapped; a closed store can no longer be used.
+ */
+public class ImageIdStore implements Closeable {
+    private static final int Magic = 0x434D4944;
+
+    private static final int Version = 1;
+
+    private static final int HeaderSize = 32;
+
+    private static final int SlotSize = 16;
+
+    /*
+     * The states of a slot. A deleted slot keeps probe chains intact until the table is rebuilt.
+     */
+    private static final int Empty = 0;
+
+    private static final int Used = 1;
+
+    private static final int Deleted = 2;
+
+    /*
+     * The fraction of used and deleted slots above which the table is rebuilt.
+     */
+    private static final double MaxLoad = 0.7;
+
+    /*
+     * The largest table that fits in a single mapped buffer.
+     */
+    private static final int MaxCapacity = 1 << 26;
+
+    private final File file;
+
+    private RandomAccessFile access;
+
+    private MappedByteBuffer buffer;
+
+    private int capacity;
+
+    private int size;
+
+    private int deleted;
+
+    /**
+     * Opens a store, or creates an empty one with room for about 700 images.
+     * @param file the file that holds the store
+     * @throws IOException if the file cannot be read or created, or is not a store
+     */
+    public ImageIdStore(File file) throws IOException {
+        this(file, 1024);
+    }
+
+    /**
+     * Opens a store, or creates an empty one.
+     * @param file the file that holds the store
+     * @param initialCapacity the number of slots of a new store; rounded up to a power of two
+     * @throws IOException if the file cannot be read or created, or is not a store
+     */
+    public ImageIdStore(File file, int initialCapacity) throws IOException {
+        this.file = file;
+        if (file.exists() && file.length() > 0) {
+            open(file);
+            if (buffer.getInt(0) != Magic || buffer.getInt(4) != Version) {
+                close();
+                throw new IOException(file + " is not an image ID store.");
+            }
+            capacity = buffer.getInt(8);
+            size = buffer.getInt(12);
+            deleted = buffer.getInt(16);
+            if (Integer.bitCount(capacity) != 1 || file.length() < HeaderSize + (long) capacity * SlotSize) {
+                close();
+                throw new IOException("The image ID store " + file + " is truncated.");
+            }
+        } else {
+            int slots = 16;
+            while (slots < initialCapacity && slots < MaxCapacity) {
+                slots <<= 1;
+            }
+            create(file, slots);
+            open(file);
+            capacity = slots;
+        }
+    }
+
+    /**
+     * @return the number of images in the store
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @param imageUrl the URL of an image
+     * @return the content ID of the image, or null if it is not in the store
+     */
+    public synchronized Integer get(String imageUrl) {
+        int slot = find(ModerationJournal.hash(imageUrl));
+        return slot < 0 ? null : buffer.getInt(offset(slot) + 8);
+    }
+
+    /**
+     * @param imageUrl the URL of an image
+     * @return true if the image is in the store
+     */
+    public synchronized boolean contains(String imageUrl) {
+        return find(ModerationJournal.hash(imageUrl)) >= 0;
+    }
+
+    /**
+     * Records the content ID of an image, replacing any previous one.
+     * @param imageUrl the URL of the image
+     * @param contentId the content ID assigned by the image list
+     * @throws IOException if the store must grow and cannot be rebuilt
+     */
+    public synchronized void put(String imageUrl, int contentId) throws IOException {
+        long hash = ModerationJournal.hash(imageUrl);
+        int slot = find(hash);
+        if (slot >= 0) {
+            buffer.putInt(offset(slot) + 8, contentId);
+            return;
+        }
+        if (size + deleted + 1 > capacity * MaxLoad) {
+            rebuild();
+        }
+        insert(hash, contentId);
+        writeCounts();
+    }
+
+    /**
+     * Removes an image.
+     * @param imageUrl the URL of the image
+     * @return the content ID of the image, or null if it was not in the store
+     */
+    public synchronized Integer remove(String imageUrl) {
+        int slot = find(ModerationJournal.hash(imageUrl));
+        if (slot < 0) {
+            return null;
+        }
+        int offset = offset(slot);
+        buffer.putInt(offset + 12, Deleted);
+        size--;
+        deleted++;
+        writeCounts();
+        return buffer.getInt(offset + 8);
+    }
+
+    /**
+     * Removes all images.
+     */
+    public synchronized void clear() {
+        for (int slot = 0; slot < capacity; slot++) {
+            buffer.putInt(offset(slot) + 12, Empty);
+        }
+        size = 0;
+        deleted = 0;
+        writeCounts();
+    }
+
+    /**
+     * Forces the changes to disk.
+     */
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    /**
+     * Flushes and closes the store.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (access != null) {
+            buffer.force();
+            access.close();
+            access = null;
+            unmap(buffer);
+            buffer = null;
+        }
+    }
+
+    /*
+     * Returns the slot holding a hash, or -1.
+     */
+    private int find(long hash) {
+        int mask = capacity - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int offset = offset(slot);
+            int state = buffer.getInt(offset + 12);
+            if (state == Empty) {
+                return -1;
+            }
+            if (state == Used && buffer.getLong(offset) == hash) {
+                return slot;
+            }
+        }
+    }
+
+    /*
+     * Stores a hash that is not in the table, reusing the first deleted slot on its probe chain.
+     */
+    private void insert(long hash, int contentId) {
+        int mask = capacity - 1;
+        int slot = mix(hash) & mask;
+        int state;
+        while ((state = buffer.getInt(offset(slot) + 12)) == Used) {
+            slot = (slot + 1) & mask;
+        }
+        if (state == Deleted) {
+            deleted--;
+        }
+        int offset = offset(slot);
+        buffer.putLong(offset, hash);
+        buffer.putInt(offset + 8, contentId);
+        buffer.putInt(offset + 12, Used);
+        size++;
+    }
+
+    /*
+     * Rebuilds the table without deleted slots, doubling it when it is more than half full.
+     */
+    private void rebuild() throws IOException {
+        int slots = capacity;
+        if ((size + 1) * 2 > capacity) {
+            if (capacity >= MaxCapacity) {
+                throw new IOException("The image ID store " + file + " is full.");
+            }
+            slots = capacity * 2;
+        }
+
+        File rebuilt = new File(file.getPath() + ".tmp");
+        create(rebuilt, slots);
+        RandomAccessFile oldAccess = access;
+        MappedByteBuffer old = buffer;
+        int oldCapacity = capacity;
+        open(rebuilt);
+        capacity = slots;
+        size = 0;
+        deleted = 0;
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int offset = slot * SlotSize + HeaderSize;
+            if (old.getInt(offset + 12) == Used) {
+                insert(old.getLong(offset), old.getInt(offset + 8));
+            }
+        }
+        writeCounts();
+
+        // Release both files before the rebuilt one replaces the store.
+        oldAccess.close();
+        unmap(old);
+        close();
+        Files.move(rebuilt.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        open(file);
+    }
+
+    private void writeCounts() {
+        buffer.putInt(12, size);
+        buffer.putInt(16, deleted);
+    }
+
+    private void open(File storeFile) throws IOException {
+        access = new RandomAccessFile(storeFile, "rw");
+        buffer = access.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, access.length());
+    }
+
+    /*
+     * Writes an empty table to a file.
+     */
+    private static void create(File storeFile, int slots) throws IOException {
+        try (RandomAccessFile created = new RandomAccessFile(storeFile, "rw")) {
+            created.setLength(0);
+            created.setLength(HeaderSize + (long) slots * SlotSize);
+            created.writeInt(Magic);
+            created.writeInt(Version);
+            created.writeInt(slots);
+            created.writeInt(0);
+            created.writeInt(0);
+        }
+    }
+
+    /*
+     * Releases a mapping now rather than when it is garbage collected, where the
+     * JVM allows it. The mapping must not be used afterwards.
+     */
+    private static void unmap(MappedByteBuffer mapping) {
+        try {
+            // Java 9 and later.
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), mapping);
+            return;
+        } catch (NoSuchMethodException e) {
+            // Java 8: use the cleaner of the buffer below.
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return;
+        }
+        try {
+            Method cleanerMethod = mapping.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(mapping);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // The mapping is released when it is garbage collected.
+        }
+    }
+
+    private static int offset(int slot) {
+        return HeaderSize + slot * SlotSize;
+    }
+
+    private static int mix(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
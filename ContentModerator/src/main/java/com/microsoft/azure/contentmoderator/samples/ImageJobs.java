@@ -12,6 +12,9 @@ import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.Job
 import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.JobInner;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class ImageJobs {
     /*
@@ -26,21 +29,26 @@ public class ImageJobs {
     private static final String ImageUrl =
             "https://moderatorsampleimages.blob.core.windows.net/samples/sample2.jpg";
 
-    /*
-     * The number of seconds to delay after a review has finished before
-     * getting the review results from the server.
-    */
-    private static final int latencyDelay = 45;
-
     /*
      * The callback endpoint for completed reviews.
      * Reviews show up for reviewers on your team.
      * As reviewers complete reviews, results are sent to the
      * callback endpoint using an HTTP POST request.
+     * Set Samples.CallbackUrl to receive them with a CallbackReceiver instead.
     */
     private static final String CallbackEndpoint = "https%3A%2F%2Frequestb.in%2Fvxke1mvx";
 
-    public static void execute(ContentModeratorClientImpl client) throws IOException, InterruptedException {
+    /*
+     * How long, in minutes, to poll the job before giving up. A job stays
+     * pending until a reviewer completes it in the review tool.
+    */
+    private static final int JobTimeout = 15;
+
+    public static void execute(ContentModeratorClientImpl client)
+            throws IOException, InterruptedException, ExecutionException {
+        // Start listening before the job is created, so that its callback cannot be missed.
+        CallbackReceiver receiver = Samples.getCallbackReceiver();
+
         System.out.println("Create moderation job for an image.");
         ContentInner contentInner = new ContentInner();
         contentInner.withContentValue(ImageUrl);
@@ -54,13 +62,12 @@ public class ImageJobs {
                 WorkflowName,
                 "application/json",
                 contentInner,
-                CallbackEndpoint);
+                Samples.CallbackUrl != null ? Samples.CallbackUrl : CallbackEndpoint);
 
         String jobId = jobResult.jobId();
         // Record the job ID.
         System.out.println("Job id created: " + jobId);
 
-        Thread.sleep(2000);
         System.out.println();
 
         System.out.println("Get job status before review.");
@@ -69,16 +76,31 @@ public class ImageJobs {
         System.out.println("Job status:" + job.status());
         System.out.println();
         System.out.println("Perform manual reviews on the Content Moderator site.");
-        System.out.println("Then, press any key to continue.");
-        System.in.read();
 
-        System.out.println();
-        System.out.println("Waiting " + latencyDelay + " seconds for results to propagate.");
-        Thread.sleep(latencyDelay * 1000);
+        if (receiver != null) {
+            // The review tool posts the job results as soon as the review is done.
+            // A callback received before this point is kept by the receiver until it is claimed.
+            System.out.println("Waiting for the job callback.");
+            try {
+                CallbackReceiver.Callback callback =
+                        receiver.awaitJob(jobId).get(Samples.CallbackTimeout, TimeUnit.MILLISECONDS);
+                System.out.println("Job status:" + callback.Status);
+                System.out.println("Review id: " + callback.ReviewId);
+                return;
+            } catch (TimeoutException e) {
+                System.out.println("No callback received in time; polling the job status instead.");
+            }
+        }
 
+        // Without a callback, poll the job status less and less often until the job finishes.
+        System.out.println("Waiting for the job to finish.");
+        try (JobTracker tracker = new JobTracker(client, Samples.TeamName)) {
+            job = tracker.track(jobId).get(JobTimeout, TimeUnit.MINUTES);
+        } catch (TimeoutException e) {
+            System.out.println("The job did not finish within " + JobTimeout + " minutes.");
+            job = client.reviews().getJobDetails(Samples.TeamName, jobId);
+        }
         System.out.println("Get job status after review.");
-        job = client.reviews().getJobDetails(
-                Samples.TeamName, jobId);
         System.out.println("Job status:" + job.status());
     }
 }
@@ -3,23 +3,14 @@ package com.microsoft.azure.contentmoderator.samples;
 import com.microsoft.azure.cognitiveservices.contentmoderator.BodyMetadata;
 import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.*;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.Hashtable;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 public class ImageList {
-    /*
-     * The minimum amount of time, im milliseconds, to wait between calls
-     * to the Image List API.
-    */
-    private static final int throttleRate = 3000;
-
-    /*
-     * The number of minutes to delay after updating the search index before
-     * performing image match operations against a the list.
-    */
-    private static final double latencyDelay = 0.5;
-
     /*
      * Define finalants for the labels to apply to the image list.
     */
@@ -102,62 +93,100 @@ public class ImageList {
     };
 
     /*
-     * A dictionary that tracks the ID assigned to each image URL when
-     * the image is added to the list.
-     * Indexed by URL.
+     * The number of threads adding images to the list.
+    */
+    public static int LoaderThreads = 4;
+
+    /*
+     * Tracks the ID assigned to each image URL when the image is added to
+     * the list, in a file named after the list so it survives restarts.
+    */
+    private static ImageIdStore ImageIdMap;
+
+    /*
+     * Set to true to skip the match calls for images that have no near
+     * duplicate in the list, by comparing perceptual hashes locally.
+     * The service does not match images by these hashes, so the filter can
+     * skip images the service would match, such as cropped or re-encoded
+     * copies: use it only when saving calls matters more than those matches.
+    */
+    public static boolean UseMatchFilter = false;
+
+    /*
+     * The perceptual hashes of the images in the list, when UseMatchFilter is set.
     */
-    private static final Hashtable<String, Integer> ImageIdMap =
-            new Hashtable<String, Integer>();
+    private static ImageMatchFilter MatchFilter;
 
-    public static void execute(ContentModeratorClientImpl client) throws InterruptedException, IOException {
+    public static void execute(ContentModeratorClientImpl client)
+            throws InterruptedException, ExecutionException, IOException {
         // Create a custom image list and record the ID assigned to it.
 
         ImageListInner creationResult = CreateCustomList(client);
         if (creationResult.id() != null) {
             // Cache the ID of the new image list.
             int listId = creationResult.id();
-
-            // Perform various operations using the image list.
-            AddImages(client, listId, images.Sports.Urls, images.Sports.Label);
-            AddImages(client, listId, images.Swimsuit.Urls, images.Swimsuit.Label);
-
-            GetAllImageIds(client, listId);
-            UpdateListDetails(client, creationResult);
-            GetListDetails(client, listId);
-
-            // Be sure to refresh search index
-            RefreshSearchIndex(client, listId);
-
-            // WriteLine();
-            System.out.println(
-                    String.format("Waiting %f minutes to allow the server time to propagate the index changes.", latencyDelay));
-            Thread.sleep((int) (latencyDelay * 60 * 1000));
-
-            // Match images against the image list.
-            MatchImages(client, ImagesToMatch);
-
-            // Remove images
-            RemoveImages(client, listId, images.Corrections);
-
-            // Be sure to refresh search index
-            RefreshSearchIndex(client, listId);
-
-            System.out.println();
-            System.out.println(
-                    String.format("Waiting %f minutes to allow the server time to propagate the index changes.", latencyDelay));
-            Thread.sleep((int) (latencyDelay * 60 * 1000));
-
-            // Match images again against the image list. The removed image should not get matched.
-            MatchImages(client, ImagesToMatch);
-
-            // Delete all images from the list.
-            DeleteAllImages(client, listId);
-
-            // Delete the image list.
-            DeleteCustomList(client, listId);
-
-            // Verify that the list was deleted.
-            GetAllListIds(client);
+            File imageIdFile = new File("ImageList" + listId + ".ids");
+            ImageIdMap = new ImageIdStore(imageIdFile);
+            boolean listDeleted = false;
+            try {
+                MatchFilter = UseMatchFilter ? new ImageMatchFilter() : null;
+
+                // Perform various operations using the image list.
+                AddImages(client, listId, images.Sports.Urls, images.Sports.Label);
+                AddImages(client, listId, images.Swimsuit.Urls, images.Swimsuit.Label);
+
+                // The content IDs survive restarts: close the store and open it
+                // again, as the next run of a program that keeps its list would.
+                ImageIdMap.close();
+                ImageIdMap = new ImageIdStore(imageIdFile);
+                System.out.println();
+                System.out.println("Reopened " + imageIdFile + " with the content IDs of " + ImageIdMap.size() + " images.");
+
+                GetAllImageIds(client, listId);
+                UpdateListDetails(client, creationResult);
+                GetListDetails(client, listId);
+
+                // Be sure to refresh search index
+                RefreshSearchIndex(client, listId);
+
+                // WriteLine();
+                // Wait until an image that was added matches against the list.
+                WaitForSearchIndex(IndexReadinessProbe.imageCheck(
+                        client, String.valueOf(listId), images.Swimsuit.Urls[0], true));
+
+                // Match images against the image list.
+                MatchImages(client, listId, ImagesToMatch);
+
+                // Remove images
+                RemoveImages(client, listId, images.Corrections);
+
+                // Be sure to refresh search index
+                RefreshSearchIndex(client, listId);
+
+                // Wait until the removed image no longer matches against the list.
+                WaitForSearchIndex(IndexReadinessProbe.imageCheck(
+                        client, String.valueOf(listId), images.Corrections[0], false));
+
+                // Match images again against the image list. The removed image should not get matched.
+                MatchImages(client, listId, ImagesToMatch);
+
+                // Delete all images from the list.
+                DeleteAllImages(client, listId);
+
+                // Delete the image list.
+                DeleteCustomList(client, listId);
+                listDeleted = true;
+
+                // Verify that the list was deleted.
+                GetAllListIds(client);
+            } finally {
+                ImageIdMap.close();
+                // The content IDs are only of use while the list exists: they are
+                // kept if the sample fails before deleting it, and deleted with it.
+                if (listDeleted) {
+                    imageIdFile.delete();
+                }
+            }
             System.out.println();
         }
     }
@@ -179,7 +208,6 @@ public class ImageList {
         System.out.println("Creating list {listDetails.Name}.");
         ImageListInner result = client.listManagementImageLists().create(
                 "application/json", listDetails);
-        Thread.sleep(throttleRate);
         System.out.println("Response:");
         System.out.println("Image id: " + result.id());
         System.out.println("Image name: " + result.name());
@@ -191,6 +219,7 @@ public class ImageList {
      * Adds images to an image list.
      * Images are assigned content IDs when they are added to the list.
      * Track the content ID assigned to each image.
+     * Images are added concurrently, at the rate allowed by your key.
      * @param client The Content Moderator client.
      * @param listId The list identifier.
      * @param imagesToAdd The images to add.
@@ -200,39 +229,56 @@ public class ImageList {
             ContentModeratorClientImpl client,
             int listId,
             String[] imagesToAdd, String label) throws InterruptedException {
-        for (String imageUrl : imagesToAdd)
+        System.out.println();
+        System.out.println("Adding " + imagesToAdd.length + " images to list " + listId + " with label " + label + ".");
+        try (ImageListLoader loader = new ImageListLoader(client, ImageIdMap, LoaderThreads))
         {
-            System.out.println();
-            System.out.println("Adding " + imageUrl + " to list " + listId + " with label " + label + ".");
-            try
+            ImageListLoader.Result result = loader.load(
+                    String.valueOf(listId), Arrays.asList(imagesToAdd).iterator(), label);
+            System.out.println("Response:");
+            System.out.println("Images added: " + result.Added);
+            System.out.println("Images already in the list: " + result.Skipped);
+            for (Map.Entry<String, Exception> failure : result.Failed.entrySet())
             {
-                BodyModelInner bodyModelInner = new BodyModelInner();
-                bodyModelInner.withDataRepresentation("URL");
-                bodyModelInner.withValue(imageUrl);
-                ImageInner result = client.listManagementImages().addImageUrlInput(
-                        listId + "",
-                        "application/json",
-                        bodyModelInner,
-                        null,
-                        label);
-
-                ImageIdMap.put(imageUrl, Integer.parseInt(result.contentId()));
-                System.out.println("Response:");
-                System.out.println("Image Content Id: " + result.contentId());
-                System.out.println("Image Tracking Id: " + result.trackingId());
-                System.out.println("Image Status: " + result.status());
+                System.out.println("Unable to add image " + failure.getKey() + " to list. Caught "
+                        + failure.getValue().getClass().getName() + ": " + failure.getValue().getMessage());
             }
-            catch (Exception ex)
+            for (Map.Entry<String, Exception> failure : result.NotRecorded.entrySet())
             {
-                System.out.println("Unable to add image to list. Caught {ex.GetType().FullName}: {ex.Message}");
+                System.out.println("Added image " + failure.getKey() + " to list, but could not record its ID"
+                        + " in the local store. Caught "
+                        + failure.getValue().getClass().getName() + ": " + failure.getValue().getMessage());
             }
-            finally
+        }
+        for (String imageUrl : imagesToAdd)
+        {
+            if (ImageIdMap.contains(imageUrl))
             {
-                Thread.sleep(throttleRate);
+                AddToMatchFilter(imageUrl);
             }
         }
     }
 
+    /*
+     * Adds the perceptual hash of an image in the list to the match filter.
+     * Images that cannot be hashed are left out, and the filter is then
+     * disabled so that no match is missed.
+     * @param imageUrl The image added to the list.
+    */
+    private static void AddToMatchFilter(String imageUrl) {
+        if (MatchFilter == null) return;
+        try
+        {
+            MatchFilter.add(imageUrl);
+        }
+        catch (IOException ex)
+        {
+            System.out.println("Unable to hash " + imageUrl + "; matching every image against the list. "
+                    + ex.getMessage());
+            MatchFilter = null;
+        }
+    }
+
     /*
      * Removes images from an image list.
      * Images are assigned content IDs when they are added to the list.
@@ -246,17 +292,27 @@ public class ImageList {
             String[] imagesToRemove) throws InterruptedException {
         for (String imageUrl : imagesToRemove)
         {
-            if (!ImageIdMap.containsKey(imageUrl)) continue;
-            int imageId = ImageIdMap.get(imageUrl);
+            Integer imageId = ImageIdMap.get(imageUrl);
+            if (imageId == null) continue;
 
             System.out.println();
             System.out.println("Removing entry for {imageUrl} (ID = {imageId}) from list {listId}.");
 
             String result = client.listManagementImages().deleteImage(
                     listId + "", imageId + "");
-            Thread.sleep(throttleRate);
 
             ImageIdMap.remove(imageUrl);
+            if (MatchFilter != null)
+            {
+                try
+                {
+                    MatchFilter.remove(imageUrl);
+                }
+                catch (IOException ex)
+                {
+                    // A stale hash only costs an extra match call.
+                }
+            }
 
             System.out.println("Response:");
             System.out.println("Result: " + result);
@@ -274,7 +330,6 @@ public class ImageList {
         System.out.println();
         System.out.println("Getting all image IDs for list {listId}.");
         ImageIdsInner result = client.listManagementImages().getAllImageIds(String.valueOf(listId));
-        Thread.sleep(throttleRate);
         System.out.println("Response:");
         System.out.println("Content Source: " + result.contentSource());
         System.out.println("Tracking Id: " + result.trackingId());
@@ -308,7 +363,6 @@ public class ImageList {
                 imageList.id().toString(),
                 "application/json",
                 listDetails);
-        Thread.sleep(throttleRate);
 
         System.out.println("Response:");
         System.out.println("Image id: " + result.id());
@@ -330,7 +384,6 @@ public class ImageList {
 
         ImageListInner result = client.listManagementImageLists().getDetails(
                 String.valueOf(listId));
-        Thread.sleep(throttleRate);
 
         System.out.println("Response:");
         System.out.println("Image id: " + result.id());
@@ -352,13 +405,28 @@ public class ImageList {
 
         RefreshIndexInner result = client.listManagementImageLists().refreshIndexMethod(
                 String.valueOf(listId));
-        Thread.sleep(throttleRate);
         System.out.println("Response:");
         System.out.println("Image id: " + result.contentSourceId());
         System.out.println("Image name: " + result.trackingId());
         return result;
     }
 
+    /*
+     * Waits until the server has propagated the changes to the search index,
+     * polling with a canary match instead of waiting a fixed amount of time.
+     * @param canary The check that passes once the changes are visible.
+    */
+    private static void WaitForSearchIndex(IndexReadinessProbe.Check canary)
+            throws InterruptedException, ExecutionException {
+        System.out.println();
+        System.out.println("Waiting for the server to propagate the index changes.");
+        try (IndexReadinessProbe probe = new IndexReadinessProbe()) {
+            if (!probe.await(canary).get()) {
+                System.out.println("The index changes were not visible in time; matches may be out of date.");
+            }
+        }
+    }
+
     /*
      * Matches images against an image list.
      * @param client The Content Moderator client.
@@ -367,19 +435,38 @@ public class ImageList {
     */
     private static void MatchImages(
             ContentModeratorClientImpl client,
+            int listId,
             String[] imagesToMatch) throws InterruptedException {
         for (String imageUrl : imagesToMatch)
         {
             System.out.println();
             System.out.println("Matching image {imageUrl} against list {listId}.");
 
+            // With UseMatchFilter, skip the match call for images with no near duplicate in the list.
+            if (MatchFilter != null)
+            {
+                try
+                {
+                    if (!MatchFilter.mayMatch(imageUrl))
+                    {
+                        System.out.println("No near duplicate in the list by perceptual hash; skipped the match call.");
+                        continue;
+                    }
+                }
+                catch (IOException ex)
+                {
+                    // Let the service decide.
+                }
+            }
+
             BodyModelInner bodyModel = new BodyModelInner();
             bodyModel.withDataRepresentation("URL");
             bodyModel.withValue(imageUrl);
             MatchResponseInner result = client.imageModerations().matchUrlInput(
                     "application/json",
-                    bodyModel);
-            Thread.sleep(throttleRate);
+                    bodyModel,
+                    String.valueOf(listId),
+                    false);
             System.out.println("Response:");
             System.out.println("Cache id: " + result.cacheID());
             System.out.println("Tracking Id: " + result.trackingId());
@@ -399,7 +486,8 @@ public class ImageList {
         System.out.println("Deleting all images from list {listId}.");
         String result = client.listManagementImages().deleteAllImages(
                 String.valueOf(listId));
-        Thread.sleep(throttleRate);
+        ImageIdMap.clear();
+        MatchFilter = UseMatchFilter ? new ImageMatchFilter() : null;
         System.out.println("Response:");
         System.out.println(result);
     }
@@ -416,7 +504,6 @@ public class ImageList {
 
         String result = client.listManagementImageLists().delete(
                 String.valueOf(listId));
-        Thread.sleep(throttleRate);
         System.out.println("Response:");
         System.out.println(result);
     }
@@ -432,7 +519,6 @@ public class ImageList {
         System.out.println("Getting all image list IDs.");
 
         List<ImageListInner> result = client.listManagementImageLists().getAllImageLists();
-        Thread.sleep(throttleRate);
         System.out.println("Response:");
         System.out.println("Size of image list: " + result.size());
         return result;
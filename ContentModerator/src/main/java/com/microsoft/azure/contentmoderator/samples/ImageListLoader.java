@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.BodyModelInner;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ContentModeratorClientImpl;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ImageInner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adds many images to an image list concurrently, and records the content ID
+ * assigned to each image in an {@link ImageIdStore}.
+ * The request rate is bounded by the rate limiter of the client (see
+ * {@link Samples#getClient(String, RateLimiter)}), and the number of requests
+ * in flight by the number of threads. Images already in the store are
+ * skipped, so an interrupted load can be restarted with the same input.
+ */
+public class ImageListLoader implements Closeable {
+    /**
+     * The outcome of a load.
+     */
+    public static class Result {
+        /*
+         * The number of images added to the list.
+         */
+        public int Added;
+
+        /*
+         * The number of images skipped because they were already in the store.
+         */
+        public int Skipped;
+
+        /*
+         * The images that could not be added, and the error for each, indexed by URL.
+         */
+        public Map<String, Exception> Failed;
+
+        /*
+         * The images added to the list whose content ID could not be recorded in
+         * the store, and the error for each, indexed by URL. They are counted in
+         * Added, and are added again by a load that is restarted.
+         */
+        public Map<String, Exception> NotRecorded;
+    }
+
+    /*
+     * The number of images added between two flushes of the store.
+     */
+    private static final int FlushInterval = 1000;
+
+    private final ContentModeratorClientImpl client;
+
+    private final ImageIdStore store;
+
+    private final ExecutorService executor;
+
+    private final int threads;
+
+    /**
+     * Creates a loader.
+     * @param client The Content Moderator client.
+     * @param store The store that records the content ID of each image.
+     * @param threads The number of threads sending requests.
+     */
+    public ImageListLoader(ContentModeratorClientImpl client, ImageIdStore store, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1.");
+        }
+        this.client = client;
+        this.store = store;
+        this.threads = threads;
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "image-list-loader-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Adds images to an image list, and waits until all of them are added or have failed.
+     * @param listId The ID of the image list.
+     * @param imageUrls The URLs of the images to add.
+     * @param label The label to apply to each image, or null.
+     * @return the outcome of the load
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    public Result load(final String listId, Iterator<String> imageUrls, final String label)
+            throws InterruptedException {
+        final Map<String, Exception> failed = new ConcurrentHashMap<String, Exception>();
+        final Map<String, Exception> notRecorded = new ConcurrentHashMap<String, Exception>();
+        final AtomicInteger added = new AtomicInteger();
+        int skipped = 0;
+
+        // Take a permit per image, so that at most one image per thread waits behind those being added.
+        final Semaphore inFlight = new Semaphore(threads * 2);
+        while (imageUrls.hasNext()) {
+            final String imageUrl = imageUrls.next();
+            if (imageUrl.length() == 0) {
+                continue;
+            }
+            if (store.contains(imageUrl)) {
+                skipped++;
+                continue;
+            }
+            inFlight.acquire();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        BodyModelInner bodyModel = new BodyModelInner();
+                        bodyModel.withDataRepresentation("URL");
+                        bodyModel.withValue(imageUrl);
+                        ImageInner image;
+                        try {
+                            image = client.listManagementImages().addImageUrlInput(
+                                    listId,
+                                    "application/json",
+                                    bodyModel,
+                                    null,
+                                    label);
+                        } catch (Exception e) {
+                            failed.put(imageUrl, e);
+                            return;
+                        }
+                        // The image is in the list from here on; a failure is the store's.
+                        try {
+                            store.put(imageUrl, Integer.parseInt(image.contentId()));
+                        } catch (IOException | RuntimeException e) {
+                            notRecorded.put(imageUrl, e);
+                        }
+                        if (added.incrementAndGet() % FlushInterval == 0) {
+                            store.flush();
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                }
+            });
+        }
+        inFlight.acquire(threads * 2);
+        inFlight.release(threads * 2);
+        store.flush();
+
+        Result result = new Result();
+        result.Added = added.get();
+        result.Skipped = skipped;
+        result.Failed = Collections.unmodifiableMap(failed);
+        result.NotRecorded = Collections.unmodifiableMap(notRecorded);
+        return result;
+    }
+
+    /**
+     * Stops the threads of the loader. Images in flight are abandoned.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
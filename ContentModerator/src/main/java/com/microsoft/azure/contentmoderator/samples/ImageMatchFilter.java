@@ -0,0 +1,240 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Screens images locally against the images of an image list, to skip the
+ * match calls for images that are not near duplicates of any of them.
+ * The filter keeps the {@link PerceptualHash} of every image in the list in a
+ * BK-tree, which finds all hashes within a Hamming distance of a query
+ * without comparing it to every hash. An image with no hash within the
+ * distance is not a near duplicate of any image in the list, and only the
+ * other images are sent to the API.
+ * The service does not match images by perceptual hash, so the filter is a
+ * guess, not the service's answer: it can skip images that the match calls
+ * would match, such as cropped or heavily re-encoded copies. It is off by
+ * default in {@link ImageList}.
+ * The tree is stored in primitive arrays: the children of a node are kept in a
+ * linked list, each tagged with its distance to the node.
+ */
+public class ImageMatchFilter {
+    private static final int None = -1;
+
+    /*
+     * The maximum number of bits by which the hashes of two near duplicates differ.
+     */
+    private final int maxDistance;
+
+    private long[] hashes = new long[64];
+
+    /*
+     * The number of images in the list with each hash; 0 once they are all removed.
+     */
+    private int[] counts = new int[64];
+
+    /*
+     * The distance of each node to its parent.
+     */
+    private int[] distances = new int[64];
+
+    private int[] firstChild = new int[64];
+
+    private int[] nextSibling = new int[64];
+
+    private int nodes;
+
+    private int size;
+
+    /**
+     * Creates a filter that treats images whose hashes differ in up to 10 bits as near duplicates.
+     */
+    public ImageMatchFilter() {
+        this(10);
+    }
+
+    /**
+     * Creates a filter.
+     * @param maxDistance the maximum number of bits by which the hashes of two near duplicates differ
+     */
+    public ImageMatchFilter(int maxDistance) {
+        if (maxDistance < 0 || maxDistance > 64) {
+            throw new IllegalArgumentException("maxDistance must be between 0 and 64.");
+        }
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * @return the number of images in the filter
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Adds an image of the list.
+     * @param hash the perceptual hash of the image
+     */
+    public synchronized void add(long hash) {
+        size++;
+        if (nodes == 0) {
+            newNode(hash, 0);
+            return;
+        }
+        int node = 0;
+        while (true) {
+            int distance = PerceptualHash.distance(hash, hashes[node]);
+            if (distance == 0) {
+                counts[node]++;
+                return;
+            }
+            int child = child(node, distance);
+            if (child == None) {
+                int added = newNode(hash, distance);
+                nextSibling[added] = firstChild[node];
+                firstChild[node] = added;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Downloads an image of the list and adds it.
+     * @param imageUrl the URL of the image
+     * @throws IOException if the image cannot be downloaded or decoded
+     */
+    public void add(String imageUrl) throws IOException {
+        add(PerceptualHash.dHash(imageUrl));
+    }
+
+    /**
+     * Removes an image that was removed from the list.
+     * @param hash the perceptual hash of the image
+     * @return true if the image was in the filter
+     */
+    public synchronized boolean remove(long hash) {
+        int node = find(hash);
+        if (node == None || counts[node] == 0) {
+            return false;
+        }
+        // The node stays in the tree to route searches to its children.
+        counts[node]--;
+        size--;
+        return true;
+    }
+
+    /**
+     * Downloads an image that was removed from the list and removes it.
+     * @param imageUrl the URL of the image
+     * @return true if the image was in the filter
+     * @throws IOException if the image cannot be downloaded or decoded
+     */
+    public boolean remove(String imageUrl) throws IOException {
+        return remove(PerceptualHash.dHash(imageUrl));
+    }
+
+    /**
+     * @param hash the perceptual hash of an image
+     * @return true if the list holds a near duplicate of the image, so a match call is needed
+     */
+    public synchronized boolean mayMatch(long hash) {
+        return nearest(hash) <= maxDistance;
+    }
+
+    /**
+     * Downloads an image and tells whether the list holds a near duplicate.
+     * @param imageUrl the URL of the image
+     * @return true if a match call is needed
+     * @throws IOException if the image cannot be downloaded or decoded
+     */
+    public boolean mayMatch(String imageUrl) throws IOException {
+        return mayMatch(PerceptualHash.dHash(imageUrl));
+    }
+
+    /**
+     * Finds the distance to the closest image in the list, searching only
+     * within the maximum distance of the filter.
+     * @param hash the perceptual hash of an image
+     * @return the smallest distance, or a value above the maximum distance if there is no near duplicate
+     */
+    public synchronized int nearest(long hash) {
+        int best = maxDistance + 1;
+        if (nodes == 0) {
+            return best;
+        }
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int distance = PerceptualHash.distance(hash, hashes[node]);
+            if (counts[node] > 0 && distance < best) {
+                best = distance;
+                if (best == 0) {
+                    break;
+                }
+            }
+            // By the triangle inequality, only children at a distance in
+            // (distance - radius, distance + radius) can hold a closer hash.
+            int radius = best - 1;
+            for (int child = firstChild[node]; child != None; child = nextSibling[child]) {
+                if (Math.abs(distances[child] - distance) <= radius) {
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top++] = child;
+                }
+            }
+        }
+        return best;
+    }
+
+    private int find(long hash) {
+        if (nodes == 0) {
+            return None;
+        }
+        int node = 0;
+        while (node != None) {
+            int distance = PerceptualHash.distance(hash, hashes[node]);
+            if (distance == 0) {
+                return node;
+            }
+            node = child(node, distance);
+        }
+        return None;
+    }
+
+    private int child(int node, int distance) {
+        for (int child = firstChild[node]; child != None; child = nextSibling[child]) {
+            if (distances[child] == distance) {
+                return child;
+            }
+        }
+        return None;
+    }
+
+    private int newNode(long hash, int distance) {
+        if (nodes == hashes.length) {
+            int capacity = nodes * 2;
+            hashes = Arrays.copyOf(hashes, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            distances = Arrays.copyOf(distances, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+        }
+        int node = nodes++;
+        hashes[node] = hash;
+        counts[node] = 1;
+        distances[node] = distance;
+        firstChild[node] = None;
+        nextSibling[node] = None;
+        return node;
+    }
+}
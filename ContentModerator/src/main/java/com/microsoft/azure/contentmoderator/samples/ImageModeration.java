@@ -3,8 +3,8 @@ package com.microsoft.azure.contentmoderator.samples;
 import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.*;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 public class ImageModeration {
     /*
@@ -47,76 +47,111 @@ public class ImageModeration {
      */
     private static String OutputFile = "ModerationOutput.json";
 
+    /*
+     * The layout of the output file. NDJSON (one result per line) stays readable
+     * if the run is interrupted, and is the only format a run can be resumed in.
+     * Use JSON_ARRAY for a single JSON document, with Resume set to false.
+     */
+    private static ModerationResultWriter.Format OutputFormat = ModerationResultWriter.Format.NDJSON;
+
+    /*
+     * The name of the file that records which images have been evaluated.
+     * Relative paths are ralative the execution directory.
+     */
+    private static String JournalFile = "ModerationOutput.journal";
+
+    /*
+     * Set to true to continue an interrupted run: images recorded in the
+     * journal are skipped, and new results are appended to the output file,
+     * after a last line the interrupted run may have left half written.
+     * Resuming requires the NDJSON output format.
+     */
+    private static boolean Resume = false;
+
+    /*
+     * Set to true to reuse the results of images already evaluated, under
+     * the same URL or under another URL with the same image bytes.
+     * Each image is downloaded once to hash its bytes.
+     */
+    private static boolean UseCache = false;
+
+    /*
+     * The name of the file that keeps the cached results between runs.
+     * Relative paths are ralative the execution directory.
+     */
+    private static String CacheFile = "ModerationCache.json";
+
+    /*
+     * The maximum number of cached results.
+     */
+    private static int CacheSize = 100000;
+
+    /*
+     * How long, in milliseconds, a cached result can be reused.
+     */
+    private static long CacheTimeToLive = TimeUnit.DAYS.toMillis(7);
+
+    /*
+     * The number of threads sending requests to the Image Moderation APIs.
+     * The requests per second are bounded by the rate limiter of the client,
+     * so this only needs to be large enough to cover the latency of the calls.
+     */
+    private static int Threads = 8;
+
+    /*
+     * The maximum number of images evaluated at the same time.
+     */
+    private static int Window = 16;
+
+    /*
+     * The number of parts of the input file scanned at the same time, each
+     * checking its image URLs against the journal ahead of the requests.
+     */
+    private static int InputReaders = 4;
+
     public static void execute(ContentModeratorClientImpl client) throws IOException, InterruptedException {
-        // Create an object in which to store the image moderation results.
-        List<EvaluationData> evaluationData = new ArrayList<EvaluationData>();
-
-        // Read image URLs from the input file and evaluate each one.
-        try (BufferedReader inputStream =
-                     new BufferedReader(new FileReader(new File(ImageUrlFile)))) {
-            String line;
-            while ((line = inputStream.readLine()) != null)
-            {
-                if (line.length() > 0)
-                {
-                    EvaluationData imageData = EvaluateImage(client, line);
-                    evaluationData.add(imageData);
-                }
+        // Read image URLs from the input file and evaluate them concurrently.
+        // Calls to the API are paced by the rate limiter of the client.
+        // Your Content Moderator service key will have a requests per second (RPS)
+        // rate limit, and the SDK will throw an exception with a 429 error code
+        // if you exceed that limit. A free tier key has a 1 RPS rate limit.
+        // Each result is saved to the output file as soon as it is available,
+        // and recorded in the journal once it is safely on disk.
+        // The input file is read through memory-mapped windows, so very large
+        // files are not copied into memory ahead of the requests. It is split
+        // into ranges scanned by their own threads, and the URLs are handed out
+        // in file order.
+        try (MappedLineReader inputFile = new MappedLineReader(new File(ImageUrlFile));
+             final ModerationJournal journal = new ModerationJournal(new File(JournalFile), Resume);
+             final ModerationResultWriter writer = new ModerationResultWriter(
+                     new File(OutputFile), OutputFormat, Resume, 100, 5000);
+             ModerationCache cache = UseCache
+                     ? new ModerationCache(CacheSize, CacheTimeToLive, new File(CacheFile))
+                     : null;
+             ImageModerationEngine engine = new ImageModerationEngine(client, Threads, Window, cache);
+             // Skip the images recorded in the journal.
+             MappedLineReader.ReadAhead imageUrls = inputFile.readAhead(InputReaders, new Predicate<String>() {
+                 @Override
+                 public boolean test(String imageUrl) {
+                     return !journal.isCompleted(imageUrl);
+                 }
+             }, 1024)) {
+            if (Resume) {
+                System.out.println(String.format("Skipping %d images evaluated by a previous run.", journal.size()));
             }
-        }
+            writer.setCheckpointListener(journal);
 
-        // Save the moderation results to a file.
-        try (BufferedWriter writer =
-                     new BufferedWriter(new FileWriter(new File(OutputFile))))
-        {
-            writer.write(evaluationData.toString());
-        }
-    }
+            engine.moderate(imageUrls, new ImageModerationEngine.ResultHandler() {
+                @Override
+                public void onResult(EvaluationData imageData) throws IOException {
+                    writer.write(imageData);
+                    journal.record(imageData.ImageUrl);
+                }
+            });
 
-    /*
-     * Evaluates an image using the Image Moderation APIs.
-     * This method throttles calls to the API.
-     * Your Content Moderator service key will have a requests per second (RPS)
-     * rate limit, and the SDK will throw an exception with a 429 error code
-     * if you exceed that limit. A free tier key has a 1 RPS rate limit.
-     * @param client The Content Moderator API wrapper to use.
-     * @param imageUrl The URL of the image to evaluate.
-     * @return Aggregated image moderation results for the image.
-    */
-    private static EvaluationData EvaluateImage(
-            ContentModeratorClientImpl client, String imageUrl) throws InterruptedException {
-        BodyModelInner url = new BodyModelInner();
-        EvaluationData imageData = new EvaluationData();
-        url.withDataRepresentation("URL");
-        url.withValue(imageUrl);
-        imageData.ImageUrl = url.value();
-
-        // Evaluate for adult and racy content.
-        imageData.ImageModeration =
-                client.imageModerations().evaluateUrlInput(
-                        "application/json",
-                        url,
-                        true);
-        Thread.sleep(1000);
-
-        // Detect and extract text.
-        imageData.TextDetection =
-                client.imageModerations().oCRUrlInput(
-                        "eng",
-                        "application/json",
-                        url,
-                        true,
-                        false);
-        Thread.sleep(1000);
-
-        // Detect faces.
-        imageData.FaceDetection =
-                client.imageModerations().findFacesUrlInput(
-                        "application/json",
-                        url,
-                        true);
-        Thread.sleep(1000);
-
-        return imageData;
+            if (cache != null) {
+                System.out.println(String.format("Answered %d images from the cache.", cache.hits()));
+            }
+        }
     }
 }
@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.BodyModelInner;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ContentModeratorClientImpl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Evaluates many images concurrently with the Image Moderation APIs.
+ * The image moderation, text detection and face detection calls for an image
+ * are sent in parallel, and several images are evaluated at the same time on a
+ * bounded thread pool. The overall request rate is bounded by the rate limiter
+ * of the client (see {@link Samples#getClient(String, RateLimiter)}).
+ * Results are handed out in the order of the input URLs.
+ * With a {@link ModerationCache}, images already evaluated, under the same URL
+ * or under another URL with the same bytes, are answered from the cache.
+ */
+public class ImageModerationEngine implements Closeable {
+    /**
+     * Receives the moderation results, in input order.
+     */
+    public interface ResultHandler {
+        /**
+         * Called once for every image that was evaluated successfully.
+         * @param imageData the moderation results for the image
+         * @throws IOException if the results cannot be stored
+         */
+        void onResult(ImageModeration.EvaluationData imageData) throws IOException;
+    }
+
+    /*
+     * The results of an image, while its calls are in flight.
+     */
+    private static class PendingImage {
+        String ImageUrl;
+        CompletableFuture<ImageModeration.EvaluationData> Result;
+    }
+
+    private final ContentModeratorClientImpl client;
+
+    private final ModerationCache cache;
+
+    private final ExecutorService executor;
+
+    /*
+     * The maximum number of images being evaluated at the same time.
+     */
+    private final int window;
+
+    /**
+     * Creates an engine.
+     * @param client The Content Moderator client.
+     * @param threads The number of threads sending requests.
+     * @param window The maximum number of images evaluated at the same time.
+     */
+    public ImageModerationEngine(ContentModeratorClientImpl client, int threads, int window) {
+        this(client, threads, window, null);
+    }
+
+    /**
+     * Creates an engine that reuses cached results.
+     * @param client The Content Moderator client.
+     * @param threads The number of threads sending requests.
+     * @param window The maximum number of images evaluated at the same time.
+     * @param cache The cache of moderation results, or null.
+     */
+    public ImageModerationEngine(ContentModeratorClientImpl client, int threads, int window,
+                                 ModerationCache cache) {
+        if (threads < 1 || window < 1) {
+            throw new IllegalArgumentException("threads and window must be at least 1.");
+        }
+        this.client = client;
+        this.cache = cache;
+        this.window = window;
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "image-moderation-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Evaluates every image URL and passes the results to the handler in input order.
+     * Images for which a call failed are reported on the console and skipped.
+     * @param imageUrls The URLs of the images to evaluate.
+     * @param handler The handler that receives the results.
+     * @throws IOException if the handler fails to store a result.
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    public void moderate(Iterator<String> imageUrls, ResultHandler handler)
+            throws IOException, InterruptedException {
+        Deque<PendingImage> pending = new ArrayDeque<PendingImage>(window);
+        while (imageUrls.hasNext()) {
+            String imageUrl = imageUrls.next();
+            if (imageUrl.length() == 0) {
+                continue;
+            }
+            if (pending.size() >= window) {
+                complete(pending.removeFirst(), handler);
+            }
+            pending.addLast(submit(imageUrl));
+        }
+        while (!pending.isEmpty()) {
+            complete(pending.removeFirst(), handler);
+        }
+    }
+
+    /*
+     * Starts the evaluation of an image, looking it up in the cache first.
+     */
+    private PendingImage submit(final String imageUrl) {
+        PendingImage image = new PendingImage();
+        image.ImageUrl = imageUrl;
+        if (cache == null) {
+            image.Result = evaluate(imageUrl);
+            return image;
+        }
+
+        ImageModeration.EvaluationData cached = cache.getByUrl(imageUrl);
+        if (cached != null) {
+            image.Result = CompletableFuture.completedFuture(cached);
+            return image;
+        }
+
+        // Hash the image bytes, then evaluate it only if no image with the same bytes is cached.
+        image.Result = CompletableFuture.supplyAsync(new Supplier<String>() {
+            @Override
+            public String get() {
+                try {
+                    return ModerationCache.hashImage(imageUrl);
+                } catch (IOException e) {
+                    // Evaluate the image without the cache.
+                    return null;
+                }
+            }
+        }, executor).thenCompose(new Function<String, CompletionStage<ImageModeration.EvaluationData>>() {
+            @Override
+            public CompletionStage<ImageModeration.EvaluationData> apply(final String contentHash) {
+                if (contentHash == null) {
+                    cache.recordMiss();
+                    return evaluate(imageUrl);
+                }
+                ImageModeration.EvaluationData cached = cache.getByContent(contentHash, imageUrl);
+                if (cached != null) {
+                    return CompletableFuture.completedFuture(cached);
+                }
+                return evaluate(imageUrl).thenApply(
+                        new Function<ImageModeration.EvaluationData, ImageModeration.EvaluationData>() {
+                            @Override
+                            public ImageModeration.EvaluationData apply(ImageModeration.EvaluationData imageData) {
+                                cache.put(contentHash, imageData);
+                                return imageData;
+                            }
+                        });
+            }
+        });
+        return image;
+    }
+
+    /*
+     * Sends the three moderation calls for an image in parallel.
+     */
+    private CompletableFuture<ImageModeration.EvaluationData> evaluate(String imageUrl) {
+        final BodyModelInner url = new BodyModelInner();
+        url.withDataRepresentation("URL");
+        url.withValue(imageUrl);
+
+        final ImageModeration.EvaluationData imageData = new ImageModeration.EvaluationData();
+        imageData.ImageUrl = imageUrl;
+
+        // Evaluate for adult and racy content.
+        CompletableFuture<Void> imageModeration = CompletableFuture.runAsync(new Runnable() {
+            @Override
+            public void run() {
+                imageData.ImageModeration = client.imageModerations().evaluateUrlInput(
+                        "application/json",
+                        url,
+                        true);
+            }
+        }, executor);
+
+        // Detect and extract text.
+        CompletableFuture<Void> textDetection = CompletableFuture.runAsync(new Runnable() {
+            @Override
+            public void run() {
+                imageData.TextDetection = client.imageModerations().oCRUrlInput(
+                        "eng",
+                        "application/json",
+                        url,
+                        true,
+                        false);
+            }
+        }, executor);
+
+        // Detect faces.
+        CompletableFuture<Void> faceDetection = CompletableFuture.runAsync(new Runnable() {
+            @Override
+            public void run() {
+                imageData.FaceDetection = client.imageModerations().findFacesUrlInput(
+                        "application/json",
+                        url,
+                        true);
+            }
+        }, executor);
+
+        // Completing the future publishes the fields set by the three calls.
+        return CompletableFuture.allOf(imageModeration, textDetection, faceDetection).thenApply(
+                new Function<Void, ImageModeration.EvaluationData>() {
+                    @Override
+                    public ImageModeration.EvaluationData apply(Void ignored) {
+                        return imageData;
+                    }
+                });
+    }
+
+    /*
+     * Waits for the results of an image and hands them to the handler.
+     */
+    private void complete(PendingImage image, ResultHandler handler)
+            throws IOException, InterruptedException {
+        ImageModeration.EvaluationData imageData;
+        try {
+            imageData = image.Result.get();
+        } catch (ExecutionException ex) {
+            System.out.println("Unable to evaluate " + image.ImageUrl + ". Caught "
+                    + ex.getCause().getClass().getName() + ": " + ex.getCause().getMessage());
+            return;
+        }
+        handler.onResult(imageData);
+    }
+
+    /**
+     * Stops the threads of the engine.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -8,6 +8,10 @@ import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.Rev
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class ImageReviews {
     /*
@@ -37,12 +41,6 @@ public class ImageReviews {
         public String ReviewId;
     }
 
-    /*
-     * The minimum amount of time, in milliseconds, to wait between calls
-     * to the Image List API.
-     */
-    private static final int throttleRate = 2000;
-
     /*
      * The number of seconds to delay after a review has finished before
      * getting the review results from the server.
@@ -65,6 +63,7 @@ public class ImageReviews {
      * Reviews show up for reviewers on your team.
      * As reviewers complete reviews, results are sent to the
      * callback endpoint using an HTTP POST request.
+     * Set Samples.CallbackUrl to receive them with a CallbackReceiver instead.
      */
     private static final String CallbackEndpoint = "https://requestb.in/vxke1mvx";
 
@@ -91,6 +90,11 @@ public class ImageReviews {
      */
     private static final String MetadataValue = "true";
 
+    /*
+     * The maximum number of review requests in flight.
+     */
+    public static int Threads = 4;
+
     /*
      * The cached review information, associating a local content ID
      * to the created review ID for each item.
@@ -98,23 +102,38 @@ public class ImageReviews {
     private static List<String> reviewItems =
             new ArrayList<String>();
 
-    public static void execute(ContentModeratorClientImpl client) throws IOException, InterruptedException {
-        CreateReviews(client);
-        GetReviewDetails(client);
-
-        System.out.println();
-        System.out.println(
-                String.format("Waiting %d seconds for results to propagate.", latencyDelay));
-        Thread.sleep(latencyDelay * 1000);
+    public static void execute(ContentModeratorClientImpl client)
+            throws IOException, InterruptedException, ExecutionException {
+        // Start listening before the reviews are created, so that no callback can be missed.
+        CallbackReceiver receiver = Samples.getCallbackReceiver();
+        try (BatchReviews batch = new BatchReviews(client, Samples.TeamName, Threads))
+        {
+            CreateReviews(batch);
+            GetReviewDetails(batch);
+
+            if (receiver != null)
+            {
+                WaitForReviews(receiver);
+                // Reviews whose callback did not arrive in time show their current status here.
+                GetReviewDetails(batch);
+                return;
+            }
+
+            System.out.println();
+            System.out.println(
+                    String.format("Waiting %d seconds for results to propagate.", latencyDelay));
+            Thread.sleep(latencyDelay * 1000);
 
-        GetReviewDetails(client);
+            GetReviewDetails(batch);
+        }
     }
 
     /*
      * Create the reviews using the fixed list of images.
-     * @param client The Content Moderator client.
+     * Large lists of images are split into several requests, sent concurrently.
+     * @param batch The batch reviews client.
      */
-    private static void CreateReviews(ContentModeratorClientImpl client) throws InterruptedException {
+    private static void CreateReviews(BatchReviews batch) throws InterruptedException, ExecutionException {
         System.out.println("Creating reviews for the following images:");
 
         // Create the structure to hold the request body information.
@@ -137,42 +156,77 @@ public class ImageReviews {
             System.out.println(" - " + ImageUrls[i] + "; with id = " + i + ".");
             reviewBodyItemInner.withType(MediaType);
             reviewBodyItemInner.withContentId(i + "");
-            reviewBodyItemInner.withCallbackEndpoint(CallbackEndpoint);
+            reviewBodyItemInner.withCallbackEndpoint(
+                    Samples.CallbackUrl != null ? Samples.CallbackUrl : CallbackEndpoint);
             reviewBodyItemInner.withContent(ImageUrls[i]);
             reviewBodyItemInner.withMetadata(metadata);
             // Add the item informaton to the request information.
             requestInfo.add(reviewBodyItemInner);
         }
 
-        List<String> reviewIds = client.reviews().createReviews(
-                Samples.TeamName, "application/json", requestInfo);
+        BatchReviews.CreateResult result = batch.createReviews(requestInfo).get();
 
         System.out.println("ReviewIds: ");
-        for (int i = 0; i < reviewIds.size(); i++)
+        for (int i = 0; i < result.ReviewIds.size(); i++)
         {
-            reviewItems.add(reviewIds.get(i));
-            System.out.println("Id: " + reviewIds.get(i));
+            String reviewId = result.ReviewIds.get(i);
+            if (reviewId == null)
+            {
+                System.out.println("Unable to create a review for " + ImageUrls[i] + ": "
+                        + result.Failed.get(i).getMessage());
+                continue;
+            }
+            reviewItems.add(reviewId);
+            System.out.println("Id: " + reviewId);
         }
 
-        Thread.sleep(throttleRate);
     }
 
     /*
-     * Gets the review details from the server.
-     * @param client The Content Moderator client.
+     * Waits for the callbacks of all reviews, posted by the review tool as
+     * reviewers complete them, for at most Samples.CallbackTimeout in all.
+     * Callbacks received while the reviews were created are kept by the receiver.
+     * @param receiver The callback receiver.
      */
-    private static void GetReviewDetails(ContentModeratorClientImpl client) throws InterruptedException {
+    private static void WaitForReviews(CallbackReceiver receiver) throws InterruptedException, ExecutionException {
         System.out.println();
-        System.out.println("Getting review details:");
+        System.out.println("Perform manual reviews on the Content Moderator site.");
+        System.out.println("Waiting for the review callbacks.");
+        long deadline = System.currentTimeMillis() + Samples.CallbackTimeout;
         for (String reviewId : reviewItems)
         {
-            ReviewInner reviewDetail = client.reviews().getReview(
-                    Samples.TeamName, reviewId);
+            try
+            {
+                CallbackReceiver.Callback callback = receiver.awaitReview(reviewId).get(
+                        Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                System.out.println("Review " + callback.ReviewId + " for item ID " + callback.ContentId + " completed.");
+            }
+            catch (TimeoutException e)
+            {
+                System.out.println("No callback received in time for review " + reviewId + ".");
+            }
+        }
+    }
+
+    /*
+     * Gets the review details from the server, fetching several reviews at a time.
+     * @param batch The batch reviews client.
+     */
+    private static void GetReviewDetails(BatchReviews batch) throws InterruptedException, ExecutionException {
+        System.out.println();
+        System.out.println("Getting review details:");
+        BatchReviews.DetailsResult result = batch.getReviews(reviewItems).get();
+        for (Map.Entry<String, Exception> failure : result.Failed.entrySet())
+        {
+            System.out.println("Unable to get review " + failure.getKey() + ": " + failure.getValue().getMessage());
+        }
+        for (ReviewInner reviewDetail : result.Reviews)
+        {
+            if (reviewDetail == null) continue;
 
             System.out.println(
                     "Review " + reviewDetail.reviewId() + " for item ID " + reviewDetail.contentId() + " is " +
                             reviewDetail.status() + ".");
-            Thread.sleep(throttleRate);
         }
     }
 }
@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import com.microsoft.azure.cognitiveservices.contentmoderator.DetectedTerms;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.BodyModelInner;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ContentModeratorClientImpl;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.MatchResponseInner;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ScreenInner;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for the changes to a term list or an image list to reach its search
+ * index, instead of waiting a fixed amount of time after refreshing it.
+ * The probe runs a canary check, such as screening a term that was just added,
+ * with exponential backoff between attempts, and completes a future as soon
+ * as the check passes.
+ */
+public class IndexReadinessProbe implements Closeable {
+    /**
+     * A check that passes once the search index holds the expected changes.
+     */
+    public interface Check {
+        /**
+         * @return true if the search index is ready
+         * @throws Exception if the check could not be run; the probe tries again later
+         */
+        boolean isReady() throws Exception;
+    }
+
+    private final ScheduledExecutorService scheduler;
+
+    /*
+     * The delays, in milliseconds, before the first attempt and between the last attempts.
+     */
+    private final long initialDelay;
+
+    private final long maxDelay;
+
+    /*
+     * The time, in milliseconds, after which the probe gives up.
+     */
+    private final long timeout;
+
+    /**
+     * Creates a probe that first checks after 1 second, then backs off up to
+     * 16 seconds between checks, and gives up after 5 minutes.
+     */
+    public IndexReadinessProbe() {
+        this(1000, 16000, TimeUnit.MINUTES.toMillis(5));
+    }
+
+    /**
+     * Creates a probe.
+     * @param initialDelay the delay, in milliseconds, before the first check
+     * @param maxDelay the maximum delay, in milliseconds, between two checks
+     * @param timeout the time, in milliseconds, after which the probe gives up
+     */
+    public IndexReadinessProbe(long initialDelay, long maxDelay, long timeout) {
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.timeout = timeout;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "index-readiness-probe");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts checking the search index.
+     * @param check the canary check
+     * @return a future that completes with true when the check passes, or
+     *         with false if it still fails after the timeout
+     */
+    public CompletableFuture<Boolean> await(final Check check) {
+        final CompletableFuture<Boolean> ready = new CompletableFuture<Boolean>();
+        final long deadline = System.currentTimeMillis() + timeout;
+        scheduler.schedule(new Runnable() {
+            private long delay = initialDelay;
+
+            @Override
+            public void run() {
+                if (ready.isDone()) {
+                    return;
+                }
+                boolean passed;
+                try {
+                    passed = check.isReady();
+                } catch (Exception e) {
+                    // The index may not be available yet; try again.
+                    passed = false;
+                }
+                if (passed) {
+                    ready.complete(true);
+                } else if (System.currentTimeMillis() + delay > deadline) {
+                    ready.complete(false);
+                } else {
+                    delay = Math.min(maxDelay, delay * 2);
+                    scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+                }
+            }
+        }, initialDelay, TimeUnit.MILLISECONDS);
+        return ready;
+    }
+
+    /**
+     * A check that passes when screening a term finds it, or no longer finds
+     * it, in a term list.
+     * @param client The Content Moderator client.
+     * @param listId The ID of the term list.
+     * @param language The language of the terms.
+     * @param term The term to screen.
+     * @param expectFound true to wait until the term is found, false to wait until it is not.
+     * @return the check
+     */
+    public static Check termCheck(final ContentModeratorClientImpl client, final String listId,
+                                  final String language, final String term, final boolean expectFound) {
+        return new Check() {
+            @Override
+            public boolean isReady() {
+                ScreenInner screen = client.textModerations().screenText(language,
+                        "text/plain",
+                        term,
+                        false,
+                        false,
+                        listId,
+                        false);
+                boolean found = false;
+                if (screen.terms() != null) {
+                    for (DetectedTerms detected : screen.terms()) {
+                        if (term.equalsIgnoreCase(detected.term()) && listId.equals(detected.listId())) {
+                            found = true;
+                        }
+                    }
+                }
+                return found == expectFound;
+            }
+        };
+    }
+
+    /**
+     * A check that passes when matching an image against an image list
+     * finds it, or no longer finds it.
+     * @param client The Content Moderator client.
+     * @param listId The ID of the image list.
+     * @param imageUrl The URL of the image to match.
+     * @param expectMatch true to wait until the image matches, false to wait until it does not.
+     * @return the check
+     */
+    public static Check imageCheck(final ContentModeratorClientImpl client, final String listId,
+                                   final String imageUrl, final boolean expectMatch) {
+        return new Check() {
+            @Override
+            public boolean isReady() {
+                BodyModelInner bodyModel = new BodyModelInner();
+                bodyModel.withDataRepresentation("URL");
+                bodyModel.withValue(imageUrl);
+                MatchResponseInner result = client.imageModerations().matchUrlInput(
+                        "application/json",
+                        bodyModel,
+                        listId,
+                        false);
+                return Boolean.valueOf(expectMatch).equals(result.isMatch());
+            }
+        };
+    }
+
+    /**
+     * Stops the probe. Pending futures are left incomplete.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
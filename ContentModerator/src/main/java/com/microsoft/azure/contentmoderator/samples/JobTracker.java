@@ -0,0 +1,263 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ContentModeratorClientImpl;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.JobInner;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks review jobs until they finish, by polling their status when no
+ * callback endpoint is available (see {@link CallbackReceiver}).
+ * Jobs are polled in rounds: every round polls the jobs that are due, and
+ * each job waits longer between polls the longer it stays unfinished, with
+ * random jitter so that jobs created together do not stay in lockstep. The
+ * number of requests therefore follows the number of active jobs, and the
+ * rate limiter of the client bounds it.
+ */
+public class JobTracker implements Closeable {
+    /*
+     * A job being tracked, ordered by the time of its next poll.
+     */
+    private static class TrackedJob implements Comparable<TrackedJob> {
+        final String JobId;
+        final CompletableFuture<JobInner> Result = new CompletableFuture<JobInner>();
+        long NextPoll;
+        long Delay;
+        int Errors;
+
+        TrackedJob(String jobId) {
+            this.JobId = jobId;
+        }
+
+        @Override
+        public int compareTo(TrackedJob other) {
+            return Long.compare(NextPoll, other.NextPoll);
+        }
+    }
+
+    /*
+     * The number of consecutive failed polls after which a job is reported as failed.
+     */
+    private static final int MaxErrors = 5;
+
+    /*
+     * The fraction of a delay added or removed at random.
+     */
+    private static final double Jitter = 0.2;
+
+    private final ContentModeratorClientImpl client;
+
+    private final String teamName;
+
+    private final ScheduledExecutorService scheduler;
+
+    /*
+     * The delays, in milliseconds, before the first poll of a job and between its last polls.
+     */
+    private final long initialDelay;
+
+    private final long maxDelay;
+
+    /*
+     * The maximum number of jobs polled per round.
+     */
+    private final int maxPerRound;
+
+    private final PriorityQueue<TrackedJob> jobs = new PriorityQueue<TrackedJob>();
+
+    /*
+     * The jobs taken out of the queue for a poll, guarded by the queue.
+     */
+    private final Set<TrackedJob> polling = new HashSet<TrackedJob>();
+
+    private boolean closed;
+
+    /**
+     * Creates a tracker that polls every job after 2 seconds, then backs off up
+     * to a minute between polls, with rounds every second of up to 100 jobs.
+     * @param client The Content Moderator client.
+     * @param teamName The name of your review team.
+     */
+    public JobTracker(ContentModeratorClientImpl client, String teamName) {
+        this(client, teamName, 2, 2000, 60000, 1000, 100);
+    }
+
+    /**
+     * Creates a tracker.
+     * @param client The Content Moderator client.
+     * @param teamName The name of your review team.
+     * @param threads The number of threads polling jobs.
+     * @param initialDelay The delay, in milliseconds, before the first poll of a job.
+     * @param maxDelay The maximum delay, in milliseconds, between two polls of a job.
+     * @param roundInterval The time, in milliseconds, between two polling rounds.
+     * @param maxPerRound The maximum number of jobs polled per round.
+     */
+    public JobTracker(ContentModeratorClientImpl client, String teamName, int threads,
+                      long initialDelay, long maxDelay, long roundInterval, int maxPerRound) {
+        if (threads < 1 || maxPerRound < 1) {
+            throw new IllegalArgumentException("threads and maxPerRound must be at least 1.");
+        }
+        this.client = client;
+        this.teamName = teamName;
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.maxPerRound = maxPerRound;
+        final AtomicInteger count = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "job-tracker-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                round();
+            }
+        }, roundInterval, roundInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts tracking a job.
+     * @param jobId The ID of the job.
+     * @return a future that completes with the details of the job once it has finished
+     */
+    public CompletableFuture<JobInner> track(String jobId) {
+        TrackedJob job = new TrackedJob(jobId);
+        job.Delay = initialDelay;
+        job.NextPoll = System.currentTimeMillis() + jitter(initialDelay);
+        synchronized (jobs) {
+            if (closed) {
+                throw new IllegalStateException("The job tracker is closed.");
+            }
+            jobs.add(job);
+        }
+        return job.Result;
+    }
+
+    /**
+     * @return the number of jobs being tracked
+     */
+    public int size() {
+        synchronized (jobs) {
+            return jobs.size();
+        }
+    }
+
+    /**
+     * Stops the tracker. The futures of unfinished jobs are cancelled.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        synchronized (jobs) {
+            closed = true;
+            for (TrackedJob job : jobs) {
+                job.Result.cancel(false);
+            }
+            for (TrackedJob job : polling) {
+                job.Result.cancel(false);
+            }
+            jobs.clear();
+            polling.clear();
+        }
+    }
+
+    /**
+     * Tells whether a job has finished. Override to recognize other statuses.
+     * @param job The details of the job.
+     * @return true if the job will not change any more
+     */
+    protected boolean isFinished(JobInner job) {
+        return "Complete".equalsIgnoreCase(job.status()) || "Failed".equalsIgnoreCase(job.status());
+    }
+
+    /*
+     * Takes the jobs that are due out of the queue, and polls them.
+     */
+    private void round() {
+        long now = System.currentTimeMillis();
+        List<TrackedJob> due = new ArrayList<TrackedJob>();
+        synchronized (jobs) {
+            while (due.size() < maxPerRound && !jobs.isEmpty() && jobs.peek().NextPoll <= now) {
+                TrackedJob job = jobs.poll();
+                polling.add(job);
+                due.add(job);
+            }
+        }
+        for (final TrackedJob job : due) {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    poll(job);
+                }
+            });
+        }
+    }
+
+    private void poll(TrackedJob job) {
+        try {
+            check(job);
+        } finally {
+            synchronized (jobs) {
+                polling.remove(job);
+                if (!job.Result.isDone()) {
+                    if (closed) {
+                        job.Result.cancel(false);
+                    } else {
+                        jobs.add(job);
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Polls a job, and completes it or schedules its next poll.
+     */
+    private void check(TrackedJob job) {
+        if (job.Result.isDone()) {
+            return;
+        }
+        try {
+            JobInner details = client.reviews().getJobDetails(teamName, job.JobId);
+            job.Errors = 0;
+            if (details != null && isFinished(details)) {
+                job.Result.complete(details);
+                return;
+            }
+        } catch (Exception e) {
+            if (++job.Errors >= MaxErrors) {
+                job.Result.completeExceptionally(e);
+                return;
+            }
+        }
+        job.Delay = Math.min(maxDelay, job.Delay * 2);
+        job.NextPoll = System.currentTimeMillis() + jitter(job.Delay);
+    }
+
+    private static long jitter(long delay) {
+        double factor = 1 + Jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return (long) (delay * factor);
+    }
+}
@@ -0,0 +1,400 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the lines of a large input file, such as a list of image URLs,
+ * through memory-mapped windows of the file. Lines are scanned in the mapped
+ * bytes and only decoded to a String when they are handed out.
+ * The file can be split into ranges that start at line boundaries, so that
+ * several workers can read it in parallel.
+ */
+public class MappedLineReader implements Closeable {
+    /*
+     * The size, in bytes, of the part of the file mapped at a time.
+     * This also bounds the length of a single line, without its terminator.
+     */
+    private static final int WindowSize = 64 * 1024 * 1024;
+
+    /*
+     * The room left in a window after WindowSize bytes, for the "\r\n" that
+     * ends a line of the maximum length.
+     */
+    private static final int TerminatorSize = 2;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    /**
+     * Opens a file for reading.
+     * @param file the file to read
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedLineReader(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = channel.size();
+    }
+
+    /**
+     * @return the size of the file, in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return a range that covers the whole file
+     */
+    public Range all() {
+        return new Range(0, size);
+    }
+
+    /**
+     * Splits the file into ranges of about the same size. Every range starts at
+     * the beginning of a line and ends after a line feed or at the end of the file.
+     * @param parts the number of ranges wanted
+     * @return the ranges, in file order; fewer than requested for small files
+     * @throws IOException if the file cannot be read
+     */
+    public List<Range> split(int parts) throws IOException {
+        List<Range> ranges = new ArrayList<Range>(parts);
+        long start = 0;
+        for (int i = 1; i <= parts && start < size; i++) {
+            long end = i == parts ? size : lineEnd(Math.max(start, size * i / parts));
+            if (end > start) {
+                ranges.add(new Range(start, end));
+                start = end;
+            }
+        }
+        return ranges;
+    }
+
+    /**
+     * Reads the file with one thread per range, and hands out its lines in
+     * file order. Each thread scans its range and applies the filter ahead
+     * of the reader, so scanning and filtering run on all the ranges at once.
+     * Close it to stop the threads.
+     * @param parts the number of ranges read at the same time
+     * @param filter keeps the lines to hand out
+     * @param capacity the number of lines a thread reads ahead
+     * @return the lines that pass the filter, in file order
+     * @throws IOException if the file cannot be read
+     */
+    public ReadAhead readAhead(int parts, Predicate<String> filter, int capacity) throws IOException {
+        return new ReadAhead(split(parts), filter, capacity);
+    }
+
+    /*
+     * Returns the position after the first line feed at or after the given position.
+     */
+    private long lineEnd(long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Closes the file. Ranges of the file can no longer be read.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * The lines of ranges read by their own threads, handed out in file order.
+     */
+    public static class ReadAhead implements Iterator<String>, Closeable {
+        /*
+         * Ends the lines of a range in its queue; compared by identity.
+         */
+        private static final String End = new String();
+
+        private final List<BlockingQueue<String>> queues;
+
+        /*
+         * The error that stopped the thread of a range, thrown when the reader gets there.
+         */
+        private final RuntimeException[] failures;
+
+        private final ExecutorService executor;
+
+        private int current;
+
+        private String next;
+
+        ReadAhead(List<Range> ranges, final Predicate<String> filter, int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("capacity must be at least 1.");
+            }
+            this.queues = new ArrayList<BlockingQueue<String>>(ranges.size());
+            this.failures = new RuntimeException[ranges.size()];
+            final AtomicInteger count = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(Math.max(1, ranges.size()), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "line-reader-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            for (int i = 0; i < ranges.size(); i++) {
+                final int index = i;
+                final Range range = ranges.get(i);
+                final BlockingQueue<String> queue = new ArrayBlockingQueue<String>(capacity);
+                queues.add(queue);
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            try {
+                                while (range.hasNext()) {
+                                    String line = range.next();
+                                    if (filter.test(line)) {
+                                        queue.put(line);
+                                    }
+                                }
+                            } catch (RuntimeException e) {
+                                // Published to the reader by the queue.
+                                failures[index] = e;
+                            }
+                            queue.put(End);
+                        } catch (InterruptedException e) {
+                            // Closed: nobody reads the queue any more.
+                        }
+                    }
+                });
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (current == queues.size()) {
+                    return false;
+                }
+                String line;
+                try {
+                    line = queues.get(current).take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while reading the lines.", e);
+                }
+                if (line == End) {
+                    if (failures[current] != null) {
+                        throw failures[current];
+                    }
+                    current++;
+                } else {
+                    next = line;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String line = next;
+            next = null;
+            return line;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Stops the threads reading the ranges.
+         */
+        @Override
+        public void close() {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A part of the file made of whole lines. A range is read by one thread.
+     */
+    public class Range implements Iterator<String> {
+        private final long start;
+
+        private final long end;
+
+        /*
+         * The position in the file of the next line.
+         */
+        private long position;
+
+        /*
+         * The mapped part of the file, and its position in the file.
+         */
+        private MappedByteBuffer window;
+
+        private long windowStart;
+
+        /*
+         * Holds the bytes of the line being decoded.
+         */
+        private byte[] line = new byte[256];
+
+        Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+            this.position = start;
+        }
+
+        /**
+         * @return the position in the file of the first byte of the range
+         */
+        public long start() {
+            return start;
+        }
+
+        /**
+         * @return the position in the file after the last byte of the range
+         */
+        public long end() {
+            return end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < end;
+        }
+
+        /**
+         * @return the next line, without its line terminator
+         */
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                long lineStart = position;
+                long newLine = find(lineStart);
+                position = newLine < end ? newLine + 1 : end;
+
+                long lineEnd = newLine;
+                if (lineEnd > lineStart && byteAt(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                int length = (int) (lineEnd - lineStart);
+                if (length > line.length) {
+                    line = new byte[Math.max(length, line.length * 2)];
+                }
+                window.position((int) (lineStart - windowStart));
+                window.get(line, 0, length);
+                return new String(line, 0, length, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * @return the remaining lines of the range, as a sequential stream
+         */
+        public Stream<String> lines() {
+            return StreamSupport.stream(
+                    Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false);
+        }
+
+        /*
+         * Returns the position of the line feed that ends the line starting at
+         * the given position, or the end of the range if there is none.
+         * On return the window covers the whole line.
+         */
+        private long find(long lineStart) throws IOException {
+            map(lineStart);
+            long limit = Math.min(end, windowStart + window.limit());
+            for (long i = lineStart; ; i++) {
+                if (i == limit) {
+                    if (limit == end) {
+                        return end;
+                    }
+                    if (lineStart == windowStart) {
+                        throw new IOException("Line at position " + lineStart + " is longer than "
+                                + WindowSize + " bytes.");
+                    }
+                    // The line crosses the end of the window: map a window that starts with the line.
+                    remap(lineStart);
+                    limit = Math.min(end, windowStart + window.limit());
+                }
+                if (window.get((int) (i - windowStart)) == '\n') {
+                    return i;
+                }
+            }
+        }
+
+        private byte byteAt(long filePosition) {
+            return window.get((int) (filePosition - windowStart));
+        }
+
+        /*
+         * Makes sure the window contains the given position.
+         */
+        private void map(long filePosition) throws IOException {
+            if (window == null || filePosition < windowStart || filePosition >= windowStart + window.limit()) {
+                remap(filePosition);
+            }
+        }
+
+        private void remap(long filePosition) throws IOException {
+            long length = Math.min(WindowSize + TerminatorSize, end - filePosition);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, filePosition, length);
+            windowStart = filePosition;
+        }
+    }
+}
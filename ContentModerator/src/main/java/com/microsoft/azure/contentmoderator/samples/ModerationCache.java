@@ -0,0 +1,289 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.rest.serializer.JacksonAdapter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches image moderation results, so that images that were already evaluated
+ * are answered locally instead of calling the API again.
+ * Results are found by image URL first, and then by a SHA-256 hash of the
+ * image bytes, so that the same image uploaded under another URL is also a hit.
+ * The cache holds a bounded number of results, evicts the least recently used
+ * ones, and drops results older than the time to live. It can be saved to a
+ * local file when it is closed and loaded again by the next run.
+ */
+public class ModerationCache implements Closeable {
+    /*
+     * A cached result and the time, in milliseconds, after which it expires.
+     */
+    static class Entry {
+        public String ContentHash;
+        public long ExpiresAt;
+        public ImageModeration.EvaluationData Result;
+    }
+
+    /*
+     * The timeouts, in milliseconds, used to download an image to hash it.
+     */
+    private static final int ConnectTimeout = 10000;
+
+    private static final int ReadTimeout = 30000;
+
+    private final ObjectMapper mapper = new JacksonAdapter().serializer();
+
+    private final long timeToLive;
+
+    private final File storeFile;
+
+    /*
+     * The cached results, indexed by content hash, in least recently used order.
+     */
+    private final LinkedHashMap<String, Entry> byContent;
+
+    /*
+     * The content hash of each known image URL, in least recently used order.
+     */
+    private final LinkedHashMap<String, String> byUrl;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * Creates a cache kept in memory only.
+     * @param maxEntries the maximum number of results kept
+     * @param timeToLive how long, in milliseconds, a result can be reused
+     */
+    public ModerationCache(int maxEntries, long timeToLive) {
+        this.timeToLive = timeToLive;
+        this.storeFile = null;
+        this.byContent = lru(maxEntries);
+        this.byUrl = lru(maxEntries);
+    }
+
+    /**
+     * Creates a cache that is loaded from a local file, if it exists, and
+     * saved to it when the cache is closed.
+     * @param maxEntries the maximum number of results kept
+     * @param timeToLive how long, in milliseconds, a result can be reused
+     * @param storeFile the file that holds the cache between runs
+     * @throws IOException if the file exists and cannot be read
+     */
+    public ModerationCache(int maxEntries, long timeToLive, File storeFile) throws IOException {
+        this.timeToLive = timeToLive;
+        this.storeFile = storeFile;
+        this.byContent = lru(maxEntries);
+        this.byUrl = lru(maxEntries);
+        if (storeFile.exists()) {
+            load();
+        }
+    }
+
+    private static <V> LinkedHashMap<String, V> lru(final int maxEntries) {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Looks up the result of an image by URL. A miss is not counted yet: it is
+     * counted once, by {@link #getByContent} or {@link #recordMiss}, so that
+     * each image is one lookup.
+     * @param imageUrl the URL of the image
+     * @return the cached result, or null
+     */
+    public synchronized ImageModeration.EvaluationData getByUrl(String imageUrl) {
+        String contentHash = byUrl.get(imageUrl);
+        if (contentHash == null) {
+            return null;
+        }
+        ImageModeration.EvaluationData result = lookup(contentHash, imageUrl);
+        if (result == null) {
+            byUrl.remove(imageUrl);
+        } else {
+            hits++;
+        }
+        return result;
+    }
+
+    /**
+     * Looks up the result of an image by the hash of its bytes.
+     * On a hit, the URL is remembered so that the next lookup by URL hits too.
+     * @param contentHash the hash of the image, see {@link #hashImage(String)}
+     * @param imageUrl the URL of the image
+     * @return the cached result, with the given URL, or null
+     */
+    public synchronized ImageModeration.EvaluationData getByContent(String contentHash, String imageUrl) {
+        ImageModeration.EvaluationData result = lookup(contentHash, imageUrl);
+        if (result != null) {
+            hits++;
+            byUrl.put(imageUrl, contentHash);
+        } else {
+            misses++;
+        }
+        return result;
+    }
+
+    /**
+     * Counts a miss for an image that missed by URL and could not be looked
+     * up by content, because it could not be downloaded to hash it.
+     */
+    public synchronized void recordMiss() {
+        misses++;
+    }
+
+    private ImageModeration.EvaluationData lookup(String contentHash, String imageUrl) {
+        Entry entry = byContent.get(contentHash);
+        if (entry != null && entry.ExpiresAt <= System.currentTimeMillis()) {
+            byContent.remove(contentHash);
+            entry = null;
+        }
+        if (entry == null) {
+            return null;
+        }
+        ImageModeration.EvaluationData result = new ImageModeration.EvaluationData();
+        result.ImageUrl = imageUrl;
+        result.ImageModeration = entry.Result.ImageModeration;
+        result.TextDetection = entry.Result.TextDetection;
+        result.FaceDetection = entry.Result.FaceDetection;
+        return result;
+    }
+
+    /**
+     * Adds the result of an image to the cache.
+     * @param contentHash the hash of the image, see {@link #hashImage(String)}
+     * @param result the moderation results for the image
+     */
+    public synchronized void put(String contentHash, ImageModeration.EvaluationData result) {
+        Entry entry = new Entry();
+        entry.ContentHash = contentHash;
+        entry.ExpiresAt = System.currentTimeMillis() + timeToLive;
+        entry.Result = result;
+        byContent.put(contentHash, entry);
+        byUrl.put(result.ImageUrl, contentHash);
+    }
+
+    /**
+     * @return the number of images answered from the cache
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of images not answered from the cache
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Downloads an image and hashes its bytes with SHA-256.
+     * The image is streamed through the digest and never held in memory.
+     * @param imageUrl the URL of the image
+     * @return the hash, as a hexadecimal string
+     * @throws IOException if the image cannot be downloaded
+     */
+    public static String hashImage(String imageUrl) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        HttpURLConnection connection = (HttpURLConnection) new URL(imageUrl).openConnection();
+        connection.setConnectTimeout(ConnectTimeout);
+        connection.setReadTimeout(ReadTimeout);
+        try (InputStream input = connection.getInputStream()) {
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            connection.disconnect();
+        }
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /*
+     * Reads the results saved by a previous run, one JSON entry per line.
+     */
+    private void load() throws IOException {
+        long now = System.currentTimeMillis();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(storeFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0) {
+                    continue;
+                }
+                Entry entry = mapper.readValue(line, Entry.class);
+                if (entry.ExpiresAt > now) {
+                    byContent.put(entry.ContentHash, entry);
+                    byUrl.put(entry.Result.ImageUrl, entry.ContentHash);
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves the results that have not expired to the store file, if any.
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (storeFile == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        File temporary = new File(storeFile.getPath() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(temporary), StandardCharsets.UTF_8))) {
+            // Write the least recently used results first, so they are evicted first after loading.
+            for (Entry entry : byContent.values()) {
+                if (entry.ExpiresAt > now) {
+                    writer.write(mapper.writeValueAsString(entry));
+                    writer.newLine();
+                }
+            }
+        }
+        if (storeFile.exists() && !storeFile.delete()) {
+            throw new IOException("Unable to replace " + storeFile + ".");
+        }
+        if (!temporary.renameTo(storeFile)) {
+            throw new IOException("Unable to rename " + temporary + " to " + storeFile + ".");
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Records which image URLs have been moderated, so that an interrupted run can
+ * be restarted without calling the API again for those images.
+ * The journal stores an 8-byte hash per completed URL in a local file. It is
+ * written at the checkpoints of a {@link ModerationResultWriter}, after the
+ * results themselves are on disk, so a URL is never marked as completed
+ * before its results are saved.
+ */
+public class ModerationJournal implements Closeable, ModerationResultWriter.CheckpointListener {
+    /*
+     * The size, in bytes, of one journal record.
+     */
+    private static final int RecordSize = 8;
+
+    private final FileOutputStream file;
+
+    private final DataOutputStream output;
+
+    /*
+     * The hashes of the URLs completed in previous runs and written in this run.
+     */
+    private final LongSet completed = new LongSet();
+
+    /*
+     * The hashes of the URLs completed since the last checkpoint.
+     */
+    private long[] pending = new long[64];
+
+    private int pendingCount;
+
+    /**
+     * Opens a journal.
+     * @param journalFile the file that holds the journal
+     * @param resume true to keep the URLs recorded by a previous run,
+     *               false to start over with an empty journal
+     * @throws IOException if the journal cannot be read or created
+     */
+    public ModerationJournal(File journalFile, boolean resume) throws IOException {
+        if (resume && journalFile.exists()) {
+            // Drop a record that was only partially written when the previous run died.
+            long records = journalFile.length() / RecordSize;
+            try (RandomAccessFile truncate = new RandomAccessFile(journalFile, "rw")) {
+                truncate.setLength(records * RecordSize);
+            }
+            try (DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(journalFile)))) {
+                for (long i = 0; i < records; i++) {
+                    completed.add(input.readLong());
+                }
+            }
+        }
+        this.file = new FileOutputStream(journalFile, resume);
+        this.output = new DataOutputStream(new BufferedOutputStream(file));
+    }
+
+    /**
+     * @return the number of URLs recorded as completed
+     */
+    public synchronized int size() {
+        return completed.size();
+    }
+
+    /**
+     * @param imageUrl an image URL
+     * @return true if the image has already been moderated
+     */
+    public synchronized boolean isCompleted(String imageUrl) {
+        return completed.contains(hash(imageUrl));
+    }
+
+    /**
+     * Marks an image as moderated. The record is written at the next checkpoint.
+     * @param imageUrl the image URL
+     */
+    public synchronized void record(String imageUrl) {
+        long hash = hash(imageUrl);
+        if (completed.add(hash)) {
+            if (pendingCount == pending.length) {
+                long[] grown = new long[pending.length * 2];
+                System.arraycopy(pending, 0, grown, 0, pendingCount);
+                pending = grown;
+            }
+            pending[pendingCount++] = hash;
+        }
+    }
+
+    /**
+     * Writes the pending records and forces them to disk.
+     * @throws IOException if the records cannot be written
+     */
+    @Override
+    public synchronized void onCheckpoint() throws IOException {
+        for (int i = 0; i < pendingCount; i++) {
+            output.writeLong(pending[i]);
+        }
+        pendingCount = 0;
+        output.flush();
+        file.getChannel().force(false);
+    }
+
+    /**
+     * Closes the journal. Records still pending are discarded, because their
+     * results may not have been saved.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        output.close();
+    }
+
+    /*
+     * Hashes a URL to 64 bits with the first 8 bytes of its SHA-256 digest.
+     */
+    static long hash(String imageUrl) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] bytes = digest.digest(imageUrl.getBytes(StandardCharsets.UTF_8));
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (bytes[i] & 0xFF);
+        }
+        return hash;
+    }
+
+    /*
+     * An open-addressing set of longs, to keep millions of hashes without
+     * boxing each one.
+     */
+    private static class LongSet {
+        /*
+         * Marks an empty slot; a hash equal to it is stored as FreeReplacement.
+         */
+        private static final long Free = 0;
+
+        private static final long FreeReplacement = 1;
+
+        private long[] table = new long[1024];
+
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        boolean contains(long value) {
+            value = value == Free ? FreeReplacement : value;
+            int mask = table.length - 1;
+            for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+                if (table[i] == Free) {
+                    return false;
+                }
+                if (table[i] == value) {
+                    return true;
+                }
+            }
+        }
+
+        boolean add(long value) {
+            value = value == Free ? FreeReplacement : value;
+            if ((size + 1) * 2 > table.length) {
+                grow();
+            }
+            int mask = table.length - 1;
+            for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+                if (table[i] == Free) {
+                    table[i] = value;
+                    size++;
+                    return true;
+                }
+                if (table[i] == value) {
+                    return false;
+                }
+            }
+        }
+
+        private void grow() {
+            long[] old = table;
+            table = new long[old.length * 2];
+            int mask = table.length - 1;
+            for (long value : old) {
+                if (value != Free) {
+                    int i = mix(value) & mask;
+                    while (table[i] != Free) {
+                        i = (i + 1) & mask;
+                    }
+                    table[i] = value;
+                }
+            }
+        }
+
+        private static int mix(long value) {
+            return (int) (value ^ (value >>> 32));
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microsoft.rest.serializer.JacksonAdapter;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes moderation results to a file as soon as they are available, so that
+ * only the result being written is held in memory and a crash loses at most
+ * the results written since the last checkpoint.
+ */
+public class ModerationResultWriter implements Closeable {
+    /**
+     * The layout of the output file.
+     */
+    public enum Format {
+        /**
+         * One JSON object per line. Every line written before a crash stays readable.
+         */
+        NDJSON,
+
+        /**
+         * A single JSON array, closed when the writer is closed.
+         */
+        JSON_ARRAY
+    }
+
+    /**
+     * Is notified after the results written so far have been forced to disk.
+     */
+    public interface CheckpointListener {
+        /**
+         * Called after every checkpoint of the writer.
+         * @throws IOException if the listener fails to save its own state
+         */
+        void onCheckpoint() throws IOException;
+    }
+
+    /*
+     * The size, in bytes, of the write buffer.
+     */
+    private static final int BufferSize = 64 * 1024;
+
+    private static final byte[] NewLine = "\n".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] Separator = ",\n".getBytes(StandardCharsets.UTF_8);
+
+    /*
+     * Serializes the SDK models the same way the client does.
+     */
+    private final ObjectMapper mapper = new JacksonAdapter().serializer();
+
+    private final FileOutputStream file;
+
+    private final OutputStream output;
+
+    private final Format format;
+
+    /*
+     * The number of results between two checkpoints.
+     */
+    private final int checkpointRecords;
+
+    /*
+     * The maximum time, in milliseconds, between two checkpoints.
+     */
+    private final long checkpointInterval;
+
+    private CheckpointListener listener;
+
+    private long written;
+
+    private int sinceCheckpoint;
+
+    private long lastCheckpoint;
+
+    /**
+     * Creates a writer that checkpoints every 100 results or every 5 seconds.
+     * @param outputFile the file to write the results to
+     * @param format the layout of the output file
+     * @throws IOException if the file cannot be created
+     */
+    public ModerationResultWriter(File outputFile, Format format) throws IOException {
+        this(outputFile, format, false, 100, 5000);
+    }
+
+    /**
+     * Creates a writer.
+     * @param outputFile the file to write the results to
+     * @param format the layout of the output file
+     * @param append true to add the results to the end of an existing NDJSON file,
+     *               after dropping a last line that was only partially written
+     * @param checkpointRecords the number of results between two checkpoints
+     * @param checkpointInterval the maximum time, in milliseconds, between two checkpoints
+     * @throws IOException if the file cannot be created
+     */
+    public ModerationResultWriter(File outputFile, Format format, boolean append,
+                                  int checkpointRecords, long checkpointInterval) throws IOException {
+        if (append && format != Format.NDJSON) {
+            throw new IllegalArgumentException("Only NDJSON output can be appended to.");
+        }
+        if (append && outputFile.exists()) {
+            truncateAfterLastLine(outputFile);
+        }
+        this.file = new FileOutputStream(outputFile, append);
+        this.output = new BufferedOutputStream(file, BufferSize);
+        this.format = format;
+        this.checkpointRecords = checkpointRecords;
+        this.checkpointInterval = checkpointInterval;
+        this.lastCheckpoint = System.currentTimeMillis();
+        if (format == Format.JSON_ARRAY) {
+            output.write('[');
+            output.write(NewLine);
+        }
+    }
+
+    /**
+     * Sets the listener notified after every checkpoint.
+     * @param listener the listener, or null
+     */
+    public synchronized void setCheckpointListener(CheckpointListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Appends a result to the file.
+     * @param result the result to write
+     * @throws IOException if the result cannot be written
+     */
+    public synchronized void write(Object result) throws IOException {
+        if (format == Format.JSON_ARRAY && written > 0) {
+            output.write(Separator);
+        }
+        output.write(mapper.writeValueAsBytes(result));
+        if (format == Format.NDJSON) {
+            output.write(NewLine);
+        }
+        written++;
+        sinceCheckpoint++;
+        if (sinceCheckpoint >= checkpointRecords
+                || System.currentTimeMillis() - lastCheckpoint >= checkpointInterval) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Flushes the written results and forces them to disk.
+     * @throws IOException if the results cannot be flushed
+     */
+    public synchronized void checkpoint() throws IOException {
+        output.flush();
+        file.getChannel().force(false);
+        sinceCheckpoint = 0;
+        lastCheckpoint = System.currentTimeMillis();
+        if (listener != null) {
+            listener.onCheckpoint();
+        }
+    }
+
+    /**
+     * @return the number of results written
+     */
+    public synchronized long written() {
+        return written;
+    }
+
+    /*
+     * Drops the bytes after the last new line of a file, the part of a record
+     * that was being written when a previous run died.
+     */
+    private static void truncateAfterLastLine(File outputFile) throws IOException {
+        try (RandomAccessFile truncate = new RandomAccessFile(outputFile, "rw")) {
+            byte[] chunk = new byte[BufferSize];
+            long end = truncate.length();
+            while (end > 0) {
+                int length = (int) Math.min(chunk.length, end);
+                truncate.seek(end - length);
+                truncate.readFully(chunk, 0, length);
+                for (int i = length - 1; i >= 0; i--) {
+                    if (chunk[i] == '\n') {
+                        truncate.setLength(end - length + i + 1);
+                        return;
+                    }
+                }
+                end -= length;
+            }
+            // Not a single complete line.
+            truncate.setLength(0);
+        }
+    }
+
+    /**
+     * Closes the JSON array if needed, forces the file to disk and closes it.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (format == Format.JSON_ARRAY) {
+                output.write(NewLine);
+                output.write(']');
+                output.write(NewLine);
+            }
+            checkpoint();
+        } finally {
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * Computes 64-bit difference hashes (dHash) of images.
+ * The image is reduced to 9x8 shades of gray, and each bit of the hash tells
+ * whether a pixel is brighter than its right neighbor. Resized, recompressed
+ * or slightly edited copies of an image have hashes that differ in a few
+ * bits, while unrelated images differ in about half of them, so the Hamming
+ * distance between two hashes tells whether the images are near duplicates.
+ */
+public final class PerceptualHash {
+    private static final int Width = 9;
+
+    private static final int Height = 8;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * @param image an image
+     * @return the difference hash of the image
+     */
+    public static long dHash(BufferedImage image) {
+        BufferedImage reduced = new BufferedImage(Width, Height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = reduced.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, Width, Height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        Raster pixels = reduced.getRaster();
+        long hash = 0;
+        for (int y = 0; y < Height; y++) {
+            for (int x = 0; x < Width - 1; x++) {
+                hash <<= 1;
+                if (pixels.getSample(x, y, 0) > pixels.getSample(x + 1, y, 0)) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Downloads an image and computes its difference hash.
+     * @param imageUrl the URL of the image
+     * @return the difference hash of the image
+     * @throws IOException if the image cannot be downloaded or decoded
+     */
+    public static long dHash(String imageUrl) throws IOException {
+        BufferedImage image;
+        try (InputStream input = new URL(imageUrl).openStream()) {
+            image = ImageIO.read(input);
+        }
+        if (image == null) {
+            throw new IOException("The format of the image " + imageUrl + " is not supported.");
+        }
+        return dHash(image);
+    }
+
+    /**
+     * @param first a hash
+     * @param second another hash
+     * @return the number of bits that differ between the hashes
+     */
+    public static int distance(long first, long second) {
+        return Long.bitCount(first ^ second);
+    }
+}
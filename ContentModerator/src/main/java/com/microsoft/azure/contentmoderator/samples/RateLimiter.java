@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A thread-safe token bucket that paces calls to the Content Moderator APIs.
+ * Your Content Moderator service key has a requests per second (RPS) rate
+ * limit; a free tier key has a 1 RPS rate limit. Every caller takes one token
+ * before sending a request, and tokens are refilled at the configured rate.
+ */
+public class RateLimiter {
+    /*
+     * The number of tokens added to the bucket per second.
+     */
+    private final double permitsPerSecond;
+
+    /*
+     * The maximum number of tokens the bucket can hold.
+     */
+    private final double capacity;
+
+    /*
+     * The number of tokens currently available.
+     */
+    private double tokens;
+
+    /*
+     * The time, in nanoseconds, the bucket was last refilled.
+     */
+    private long lastRefill;
+
+    /*
+     * The time, in nanoseconds, until which no tokens are handed out,
+     * after the service asked us to back off.
+     */
+    private long pausedUntil;
+
+    /**
+     * Creates a rate limiter that allows no bursts above one second's worth of requests.
+     * @param permitsPerSecond the requests per second allowed by your key
+     */
+    public RateLimiter(double permitsPerSecond) {
+        this(permitsPerSecond, Math.max(1, permitsPerSecond));
+    }
+
+    /**
+     * Creates a rate limiter.
+     * @param permitsPerSecond the requests per second allowed by your key
+     * @param capacity the maximum number of requests that can be sent back to back
+     */
+    public RateLimiter(double permitsPerSecond, double capacity) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive.");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1.");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = capacity;
+        this.tokens = 1;
+        this.lastRefill = System.nanoTime();
+        this.pausedUntil = this.lastRefill;
+    }
+
+    /**
+     * @return the requests per second allowed by this limiter
+     */
+    public double permitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * Blocks until a request may be sent.
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                refill(now);
+                if (now - pausedUntil < 0) {
+                    waitNanos = pausedUntil - now;
+                } else if (tokens >= 1) {
+                    tokens -= 1;
+                    return;
+                } else {
+                    waitNanos = (long) Math.ceil((1 - tokens) / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+                }
+            }
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Stops handing out tokens for the given amount of time, for example
+     * when the service answers with 429 and a Retry-After header.
+     * @param millis the number of milliseconds to back off
+     */
+    public synchronized void pause(long millis) {
+        long now = System.nanoTime();
+        long until = now + TimeUnit.MILLISECONDS.toNanos(millis);
+        if (until - pausedUntil > 0) {
+            pausedUntil = until;
+        }
+        // Start again from an empty bucket so the paused callers do not all fire at once.
+        tokens = 0;
+        lastRefill = pausedUntil;
+    }
+
+    private void refill(long now) {
+        if (now - lastRefill > 0) {
+            double elapsedSeconds = (now - lastRefill) / (double) TimeUnit.SECONDS.toNanos(1);
+            tokens = Math.min(capacity, tokens + elapsedSeconds * permitsPerSecond);
+            lastRefill = now;
+        }
+    }
+}
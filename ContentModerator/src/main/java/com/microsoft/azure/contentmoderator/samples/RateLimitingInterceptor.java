@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Paces every request sent by the client with a {@link RateLimiter}, and
+ * retries requests that were rejected with 429 (Too Many Requests) after
+ * the delay the service asked for in the Retry-After header.
+ */
+public class RateLimitingInterceptor implements Interceptor {
+    /*
+     * The status code the service returns when the RPS limit is exceeded.
+     */
+    private static final int TooManyRequests = 429;
+
+    /*
+     * The delay, in milliseconds, used for the first retry when the
+     * service does not send a Retry-After header.
+     */
+    private static final long DefaultBackoff = 1000;
+
+    /*
+     * The longest delay, in milliseconds, between two retries.
+     */
+    private static final long MaxBackoff = 60 * 1000;
+
+    private final RateLimiter limiter;
+
+    private final int maxRetries;
+
+    /**
+     * Creates an interceptor that retries throttled requests up to 5 times.
+     * @param limiter the rate limiter shared by all requests of the client
+     */
+    public RateLimitingInterceptor(RateLimiter limiter) {
+        this(limiter, 5);
+    }
+
+    /**
+     * Creates an interceptor.
+     * @param limiter the rate limiter shared by all requests of the client
+     * @param maxRetries the number of times a throttled request is retried
+     */
+    public RateLimitingInterceptor(RateLimiter limiter, int maxRetries) {
+        this.limiter = limiter;
+        this.maxRetries = maxRetries;
+    }
+
+    @Override
+    public Response intercept(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                limiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the rate limiter.");
+            }
+
+            Response response = chain.proceed(request);
+            if (response.code() != TooManyRequests || attempt >= maxRetries) {
+                return response;
+            }
+
+            long delay = retryAfter(response.header("Retry-After"), attempt);
+            response.close();
+            limiter.pause(delay);
+        }
+    }
+
+    /*
+     * Reads the Retry-After header, which holds either a number of seconds
+     * or an HTTP date. Falls back to exponential backoff if it is missing.
+     */
+    private static long retryAfter(String header, int attempt) {
+        long fallback = Math.min(MaxBackoff, DefaultBackoff << Math.min(attempt, 16));
+        if (header == null || header.trim().isEmpty()) {
+            return fallback;
+        }
+        try {
+            return Math.min(MaxBackoff, Long.parseLong(header.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                Date date = format.parse(header.trim());
+                return Math.max(0, Math.min(MaxBackoff, date.getTime() - System.currentTimeMillis()));
+            } catch (ParseException ignored) {
+                return fallback;
+            }
+        }
+    }
+}
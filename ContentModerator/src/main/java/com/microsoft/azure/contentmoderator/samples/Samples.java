@@ -7,16 +7,17 @@
 package com.microsoft.azure.contentmoderator.samples;
 
 import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ContentModeratorClientImpl;
-import com.microsoft.rest.credentials.ServiceClientCredentials;
-import okhttp3.Interceptor;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class Samples {
     /**
@@ -33,46 +34,98 @@ public class Samples {
      */
     public static String TeamName;
 
+    /*
+     * The requests per second (RPS) allowed by your Content Moderator key.
+     * A free tier key has a 1 RPS rate limit; an S0 key has a 10 RPS rate limit.
+     */
+    public static double RequestsPerSecond = 1;
+
+    /*
+     * The public URL at which the review tool can reach the callback receiver
+     * of the samples, or null to poll for job and review results instead.
+     */
+    public static String CallbackUrl;
+
+    /*
+     * The local port the callback receiver listens on; 0 picks a free port.
+     */
+    public static int CallbackPort = 0;
+
+    /*
+     * How long, in milliseconds, the samples wait for a callback before they
+     * poll the service for the job or review instead.
+     */
+    public static long CallbackTimeout = TimeUnit.MINUTES.toMillis(10);
+
+    private static CallbackReceiver callbackReceiver;
+
+    /*
+     * The clients shared by all samples, indexed by subscription key, so that
+     * connections and TLS sessions are reused between the samples.
+     */
+    private static final Map<String, ContentModeratorClientImpl> clients =
+            new HashMap<String, ContentModeratorClientImpl>();
+
     /**
-     * Makes an instance of the ComputerVisionAPIImpl.
-     * @param subscriptionKey cognitive services bing subscription key
-     * @return EntitySearchAPIImpl instance
+     * Returns the shared instance of the ContentModeratorClientImpl for a key,
+     * which paces its requests to {@link #RequestsPerSecond}.
+     * @param subscriptionKey cognitive services content moderator subscription key
+     * @return ContentModeratorClientImpl instance
      */
-    public static ContentModeratorClientImpl getClient(final String subscriptionKey) {
-        return new ContentModeratorClientImpl(
-                new ServiceClientCredentials() {
-                    @Override
-                    public void applyCredentialsFilter(OkHttpClient.Builder builder) {
-                        builder.addNetworkInterceptor(
-                                new Interceptor() {
-                                    @Override
-                                    public Response intercept(Interceptor.Chain chain) throws IOException {
-                                        Request request = null;
-                                        Request original = chain.request();
-                                        // Request customization: add request headers
-                                        Request.Builder requestBuilder = original.newBuilder()
-                                                .addHeader("Ocp-Apim-Subscription-Key", subscriptionKey);
-                                        request = requestBuilder.build();
-                                        return chain.proceed(request);
-                                    }
-                                });
-                    }
-                }).withBaseUrl(System.getenv("CONTENT_MODERATOR_ENDPOINT")); // Add your endpoint to your environment variables.
+    public static synchronized ContentModeratorClientImpl getClient(final String subscriptionKey) {
+        ContentModeratorClientImpl client = clients.get(subscriptionKey);
+        if (client == null) {
+            client = getClient(subscriptionKey, new RateLimiter(RequestsPerSecond));
+            clients.put(subscriptionKey, client);
+        }
+        return client;
     }
 
-    static String readFileContents(String filePath) throws IOException {
-        // Load the input text.
-        StringBuffer buffer = new StringBuffer();
-        try (BufferedReader inputStream =
-                     new BufferedReader(new FileReader(new File(filePath)))) {
-            String line;
-            while ((line = inputStream.readLine()) != null)
-            {
-                buffer.append(line);
-            }
+    /**
+     * Makes an instance of the ContentModeratorClientImpl.
+     * Use {@link ContentModeratorClientBuilder} to tune its HTTP connections.
+     * @param subscriptionKey cognitive services content moderator subscription key
+     * @param limiter the rate limiter to share between all requests sent with this key
+     * @return ContentModeratorClientImpl instance
+     */
+    public static ContentModeratorClientImpl getClient(final String subscriptionKey, final RateLimiter limiter) {
+        return new ContentModeratorClientBuilder()
+                .withSubscriptionKey(subscriptionKey)
+                .withRateLimiter(limiter)
+                .build(); // Add your endpoint to the CONTENT_MODERATOR_ENDPOINT environment variable.
+    }
+
+    /**
+     * Returns the callback receiver shared by all samples, started on first use.
+     * Get it before creating the jobs or reviews it receives the callbacks of,
+     * so that no callback arrives before the receiver listens.
+     * @return the receiver, or null if no {@link #CallbackUrl} is configured
+     * @throws IOException if the receiver cannot listen on {@link #CallbackPort}
+     */
+    public static synchronized CallbackReceiver getCallbackReceiver() throws IOException {
+        if (CallbackUrl == null) {
+            return null;
+        }
+        if (callbackReceiver == null) {
+            callbackReceiver = new CallbackReceiver(CallbackPort);
         }
+        return callbackReceiver;
+    }
 
-        return buffer.toString();
+    /**
+     * Stops the callback receiver, if it was started. The HTTP server of the
+     * JDK runs on a thread that would otherwise keep the JVM alive.
+     */
+    public static synchronized void closeCallbackReceiver() {
+        if (callbackReceiver != null) {
+            callbackReceiver.close();
+            callbackReceiver = null;
+        }
+    }
+
+    static String readFileContents(String filePath) throws IOException {
+        // Load the input text, keeping its line breaks.
+        return new String(Files.readAllBytes(Paths.get(filePath)), StandardCharsets.UTF_8);
     }
 
     /**
@@ -97,6 +150,22 @@ public class Samples {
                 }
             }
 
+            // Optionally add the requests per second allowed by your key to your environment variables.
+            String requestsPerSecond = System.getenv("CONTENT_MODERATOR_REQUESTS_PER_SECOND");
+            if(requestsPerSecond != null) {
+                RequestsPerSecond = Double.parseDouble(requestsPerSecond);
+            }
+
+            // Optionally expose a callback receiver to the review tool, for example through a tunnel,
+            // and add its public URL and local port to your environment variables.
+            if(CallbackUrl == null) {
+                CallbackUrl = System.getenv("CONTENT_MODERATOR_CALLBACK_URL");
+            }
+            String callbackPort = System.getenv("CONTENT_MODERATOR_CALLBACK_PORT");
+            if(callbackPort != null) {
+                CallbackPort = Integer.parseInt(callbackPort);
+            }
+
             ContentModeratorClientImpl client  = Samples.getClient(apiKey);
             ImageJobs.execute(client);
             ImageList.execute(client);
@@ -112,6 +181,8 @@ public class Samples {
         } catch (Exception e) {
             System.out.println(e.getMessage());
             e.printStackTrace();
+        } finally {
+            closeCallbackReceiver();
         }
     }
 }
@@ -5,6 +5,10 @@ import com.microsoft.azure.cognitiveservices.contentmoderator.TermsData;
 import com.microsoft.azure.cognitiveservices.contentmoderator.TermsInList;
 import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.*;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
 public class TermList {
     // NOTE: Replace this with the appropriate language for your region.
     /*
@@ -12,18 +16,6 @@ public class TermList {
      */
     private static final String lang = "eng";
 
-    /*
-     * The minimum amount of time, in milliseconds, to wait between calls
-     * to the Content Moderator APIs.
-     */
-    private static final int throttleRate = 3000;
-
-    /*
-     * The number of minutes to delay after updating the search index before
-     * performing image match operations against a the list.
-     */
-    private static final double latencyDelay = 0.5;
-
     /*
      * Creates a new term list.
      * @param client The Content Moderator client.
@@ -44,7 +36,6 @@ public class TermList {
             String list_id = list.id().toString();
             System.out.println(
                     String.format("Term list created. ID: %s.", list_id));
-            Thread.sleep(throttleRate);
             return list_id;
         }
     }
@@ -63,7 +54,6 @@ public class TermList {
         body.withName(name);
         body.withDescription(description);
         client.listManagementTermLists().update(list_id, "application/json", body);
-        Thread.sleep(throttleRate);
     }
 
     /*
@@ -76,7 +66,51 @@ public class TermList {
         System.out.println(
                 String.format("Adding term \"%s\" to term list with ID %s.", term, list_id));
         client.listManagementTerms().addTerm(list_id, term, lang);
-        Thread.sleep(throttleRate);
+    }
+
+    /*
+     * Add terms to the indicated term list in a single batch, and refresh
+     * the search index of the list once all terms are added.
+     * @param client The Content Moderator client.
+     * @param sync The local copy of the term list to update.
+     * @param terms The terms to add to the term list.
+     */
+    static void AddTerms (ContentModeratorClientImpl client, TermListSync sync, String... terms) throws Exception {
+        System.out.println(
+                String.format("Adding %d terms to term list with ID %s.", terms.length, sync.listId()));
+        String canary = null;
+        try (TermListBatch batch = new TermListBatch(client, sync.listId(), lang, 4).withSync(sync)) {
+            for (String term : terms)
+            {
+                batch.add(term);
+            }
+            TermListBatch.Result result = batch.commit().get();
+            System.out.println(String.format("Added %d terms.", result.Applied));
+            for (Map.Entry<String, Exception> failure : result.Failed.entrySet())
+            {
+                System.out.println(String.format("Unable to add term \"%s\": %s", failure.getKey(),
+                        failure.getValue().getMessage()));
+            }
+            for (String term : terms)
+            {
+                if (!result.Failed.containsKey(term))
+                {
+                    canary = term;
+                    break;
+                }
+            }
+        }
+        System.out.println(
+                String.format("Refreshed search index for term list with ID %s.", sync.listId()));
+        if (canary != null)
+        {
+            // Wait until one of the added terms is found when screening.
+            WaitForSearchIndex(IndexReadinessProbe.termCheck(client, sync.listId(), lang, canary, true));
+        }
+        else
+        {
+            System.out.println("No term was added; not waiting for the search index.");
+        }
     }
 
     /*
@@ -93,19 +127,35 @@ public class TermList {
         {
             System.out.println(term.term());
         }
-        Thread.sleep(throttleRate);
     }
 
     /*
      * Refresh the search index for the indicated term list.
      * @param client The Content Moderator client.
      * @param list_id The ID of the term list to refresh.
+     * @param canary The check that passes once the changes are visible in the search index.
      */
-    static void RefreshSearchIndex (ContentModeratorClientImpl client, String list_id) throws InterruptedException {
+    static void RefreshSearchIndex (ContentModeratorClientImpl client, String list_id,
+                                    IndexReadinessProbe.Check canary) throws InterruptedException, ExecutionException {
         System.out.println(
                 String.format("Refreshing search index for term list with ID %s.", list_id));
         client.listManagementTermLists().refreshIndexMethod(list_id, lang);
-        Thread.sleep((int)(latencyDelay * 60 * 1000));
+        WaitForSearchIndex(canary);
+    }
+
+    /*
+     * Wait for the server to propagate the changes to the search index,
+     * polling with a canary check instead of waiting a fixed amount of time.
+     * @param canary The check that passes once the changes are visible in the search index.
+     */
+    static void WaitForSearchIndex (IndexReadinessProbe.Check canary) throws InterruptedException, ExecutionException {
+        try (IndexReadinessProbe probe = new IndexReadinessProbe())
+        {
+            if (!probe.await(canary).get())
+            {
+                System.out.println("The search index changes were not visible in time; results may be out of date.");
+            }
+        }
     }
 
     /*
@@ -136,7 +186,35 @@ public class TermList {
                         term.listId(), term.index()));
             }
         }
-        Thread.sleep(throttleRate);
+    }
+
+    /*
+     * Screen the indicated text locally, using a local copy of a term list.
+     * Use this to pre-screen large volumes of text before calling ScreenText.
+     * @param sync The local copy of the term list to use to screen the text.
+     * @param text The text to screen.
+     */
+    static void ScreenTextLocally (TermListSync sync, String text) {
+        System.out.println(
+                String.format("Screening text locally: \"%s\" using term list with ID %s.", text, sync.listId()));
+        // Download the term list only if the local copy is out of date.
+        if (sync.reconcile())
+        {
+            System.out.println(String.format("Downloaded %d terms.", sync.terms().size()));
+        }
+        List<DetectedTerms> terms = sync.screener().screen(text);
+        if (terms.isEmpty())
+        {
+            System.out.println("No terms from the term list were detected in the text.");
+        }
+        else
+        {
+            for (DetectedTerms term : terms)
+            {
+                System.out.println(String.format("Found term: \"%s\" from list ID %s at index %d.", term.term(),
+                        term.listId(), term.index()));
+            }
+        }
     }
 
     /*
@@ -149,7 +227,6 @@ public class TermList {
         System.out.println(
                 String.format("Removed term \"%s\" from term list with ID %s.", term, list_id));
         client.listManagementTerms().deleteTerm(list_id, term, lang);
-        Thread.sleep(throttleRate);
     }
 
     /*
@@ -161,7 +238,6 @@ public class TermList {
         System.out.println(
                 String.format("Removing all terms from term list with ID %s.", list_id));
         client.listManagementTerms().deleteAllTerms(list_id, lang);
-        Thread.sleep(throttleRate);
     }
 
     /*
@@ -173,31 +249,37 @@ public class TermList {
         System.out.println(
                 String.format("Deleting term list with ID %s.", list_id));
         client.listManagementTermLists().delete(list_id);
-        Thread.sleep(throttleRate);
     }
 
     static void execute(ContentModeratorClientImpl client) throws Exception {
             String list_id = CreateTermList(client);
 
             UpdateTermList(client, list_id, "name", "description");
-            AddTerm(client, list_id, "term1");
-            AddTerm(client, list_id, "term2");
+            // Keep a local copy of the term list to screen text locally.
+            TermListSync sync = new TermListSync(client, list_id, lang);
 
-            GetAllTerms(client, list_id);
+            // Adding terms in a batch refreshes the search index of your list once, at the end.
+            AddTerms(client, sync, "term1", "term2");
 
-            // Always remember to refresh the search index of your list
-            RefreshSearchIndex(client, list_id);
+            GetAllTerms(client, list_id);
 
             String text = "This text contains the terms \"term1\" and \"term2\".";
             ScreenText(client, list_id, text);
 
+            // The local screener does not depend on the search index.
+            ScreenTextLocally(sync, text);
+
             DeleteTerm(client, list_id, "term1");
+            sync.onTermDeleted("term1");
 
-            // Always remember to refresh the search index of your list
-            RefreshSearchIndex(client, list_id);
+            // Always remember to refresh the search index of your list,
+            // then wait until the deleted term is no longer found.
+            RefreshSearchIndex(client, list_id,
+                    IndexReadinessProbe.termCheck(client, list_id, lang, "term1", false));
 
             text = "This text contains the terms \"term1\" and \"term2\".";
             ScreenText(client, list_id, text);
+            ScreenTextLocally(sync, text);
 
             DeleteAllTerms(client, list_id);
             DeleteTermList(client, list_id);
@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ContentModeratorClientImpl;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.RefreshIndexInner;
+
+import java.io.Closeable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Applies many term additions and deletions to a term list, and refreshes
+ * the search index of the list once at the end.
+ * Changes are queued with {@link #add(String)} and {@link #delete(String)};
+ * when the same term is changed several times only the last change is sent.
+ * {@link #commit()} sends the changes concurrently, as fast as the rate
+ * limiter of the client allows, and returns a future that completes after
+ * the single call to refreshIndexMethod.
+ */
+public class TermListBatch implements Closeable {
+    /**
+     * The outcome of a committed batch.
+     */
+    public static class Result {
+        /*
+         * The number of changes applied.
+         */
+        public int Applied;
+
+        /*
+         * The changes that failed, and the error for each, indexed by term.
+         */
+        public Map<String, Exception> Failed;
+
+        /*
+         * The response of the index refresh.
+         */
+        public RefreshIndexInner Refresh;
+    }
+
+    private enum Operation { ADD, DELETE }
+
+    private final ContentModeratorClientImpl client;
+
+    private final String listId;
+
+    private final String language;
+
+    private final ExecutorService executor;
+
+    private TermListSync sync;
+
+    /*
+     * The queued changes, indexed by term, in the order they were queued.
+     */
+    private final LinkedHashMap<String, Operation> pending = new LinkedHashMap<String, Operation>();
+
+    /**
+     * Creates a batch for a term list.
+     * @param client The Content Moderator client.
+     * @param listId The ID of the term list.
+     * @param language The language of the terms.
+     * @param threads The number of threads sending the changes.
+     */
+    public TermListBatch(ContentModeratorClientImpl client, String listId, String language, int threads) {
+        this.client = client;
+        this.listId = listId;
+        this.language = language;
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "term-list-batch-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Applies the changes that succeed to a local copy of the list.
+     * @param sync the local copy of the list
+     * @return the batch
+     */
+    public TermListBatch withSync(TermListSync sync) {
+        this.sync = sync;
+        return this;
+    }
+
+    /**
+     * Queues the addition of a term.
+     * @param term the term to add
+     * @return the batch
+     */
+    public synchronized TermListBatch add(String term) {
+        pending.remove(term);
+        pending.put(term, Operation.ADD);
+        return this;
+    }
+
+    /**
+     * Queues the deletion of a term.
+     * @param term the term to delete
+     * @return the batch
+     */
+    public synchronized TermListBatch delete(String term) {
+        pending.remove(term);
+        pending.put(term, Operation.DELETE);
+        return this;
+    }
+
+    /**
+     * @return the number of queued changes
+     */
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Sends the queued changes and refreshes the search index of the list once.
+     * The queue is emptied, so the batch can be reused for more changes.
+     * @return a future that completes with the outcome after the index refresh
+     */
+    public CompletableFuture<Result> commit() {
+        final List<Map.Entry<String, Operation>> changes;
+        synchronized (this) {
+            changes = new ArrayList<Map.Entry<String, Operation>>(pending.size());
+            for (Map.Entry<String, Operation> change : pending.entrySet()) {
+                changes.add(new AbstractMap.SimpleImmutableEntry<String, Operation>(change));
+            }
+            pending.clear();
+        }
+
+        final Map<String, Exception> failed = new ConcurrentHashMap<String, Exception>();
+        List<CompletableFuture<Void>> calls = new ArrayList<CompletableFuture<Void>>(changes.size());
+        for (final Map.Entry<String, Operation> change : changes) {
+            calls.add(CompletableFuture.runAsync(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        apply(change.getKey(), change.getValue());
+                    } catch (Exception e) {
+                        failed.put(change.getKey(), e);
+                        if (sync != null) {
+                            // The local copy no longer reflects what the server holds.
+                            sync.markStale();
+                        }
+                    }
+                }
+            }, executor));
+        }
+
+        final int total = changes.size();
+        return CompletableFuture.allOf(calls.toArray(new CompletableFuture[calls.size()]))
+                .thenApplyAsync(new Function<Void, Result>() {
+                    @Override
+                    public Result apply(Void ignored) {
+                        Result result = new Result();
+                        result.Failed = Collections.unmodifiableMap(failed);
+                        result.Applied = total - failed.size();
+                        result.Refresh = client.listManagementTermLists().refreshIndexMethod(listId, language);
+                        return result;
+                    }
+                }, executor);
+    }
+
+    private void apply(String term, Operation operation) {
+        if (operation == Operation.ADD) {
+            client.listManagementTerms().addTerm(listId, term, language);
+            if (sync != null) {
+                sync.onTermAdded(term);
+            }
+        } else {
+            client.listManagementTerms().deleteTerm(listId, term, language);
+            if (sync != null) {
+                sync.onTermDeleted(term);
+            }
+        }
+    }
+
+    /**
+     * Stops the threads of the batch. Changes in flight are abandoned.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,354 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import com.microsoft.azure.cognitiveservices.contentmoderator.TermsData;
+import com.microsoft.azure.cognitiveservices.contentmoderator.TermsInList;
+import com.microsoft.azure.cognitiveservices.contentmoderator.TermsPaging;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ContentModeratorClientImpl;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.TermsInner;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a local copy of a term list in sync with the service.
+ * Terms added or deleted through this class, or reported to it, are applied
+ * to the local copy right away. The full list is only downloaded, page by
+ * page, when the local copy may be out of date: on the first sync, when a
+ * change made through the API failed or {@link #markStale()} was called,
+ * when the number of terms on the server no longer matches the local copy,
+ * or when the last full download is older than the maximum age. Refreshing
+ * the search index does not change the terms of the list, so it needs no
+ * download.
+ * Counting the terms on the server only detects changes made elsewhere that
+ * change the count: a term deleted and another added elsewhere leave it
+ * unchanged, so such changes are only picked up by the next full download.
+ * Terms added or deleted while a download is running are applied again to
+ * the downloaded copy, since its pages may have been read before the change.
+ * Every change to the local copy increments its version.
+ */
+public class TermListSync {
+    private final ContentModeratorClientImpl client;
+
+    private final String listId;
+
+    private final String language;
+
+    /*
+     * The number of terms fetched per request during a full sync.
+     */
+    private final int pageSize;
+
+    private Set<String> terms = new HashSet<String>();
+
+    private long version;
+
+    /*
+     * True when the local copy must be downloaded again before it can be trusted.
+     */
+    private boolean stale = true;
+
+    /*
+     * The time, in milliseconds, after which the local copy is downloaded
+     * again even if the number of terms on the server has not changed.
+     */
+    private long maxAge = TimeUnit.MINUTES.toMillis(15);
+
+    /*
+     * The time of the last full download, in milliseconds.
+     */
+    private long lastFullSync;
+
+    /*
+     * For each download running, the terms added (true) or deleted (false)
+     * since it started, by term; the last change of a term wins.
+     */
+    private final Set<Map<String, Boolean>> changesDuringSync =
+            Collections.newSetFromMap(new IdentityHashMap<Map<String, Boolean>, Boolean>());
+
+    private TermScreener screener;
+
+    private long screenerVersion = -1;
+
+    /**
+     * Creates a sync for a term list that fetches 100 terms per request.
+     * @param client The Content Moderator client.
+     * @param listId The ID of the term list.
+     * @param language The language of the terms.
+     */
+    public TermListSync(ContentModeratorClientImpl client, String listId, String language) {
+        this(client, listId, language, 100);
+    }
+
+    /**
+     * Creates a sync for a term list.
+     * @param client The Content Moderator client.
+     * @param listId The ID of the term list.
+     * @param language The language of the terms.
+     * @param pageSize The number of terms fetched per request.
+     */
+    public TermListSync(ContentModeratorClientImpl client, String listId, String language, int pageSize) {
+        this.client = client;
+        this.listId = listId;
+        this.language = language;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return the ID of the term list
+     */
+    public String listId() {
+        return listId;
+    }
+
+    /**
+     * @return the version of the local copy, incremented on every change
+     */
+    public synchronized long version() {
+        return version;
+    }
+
+    /**
+     * @return a read-only copy of the local terms
+     */
+    public synchronized Set<String> terms() {
+        return Collections.unmodifiableSet(new HashSet<String>(terms));
+    }
+
+    /**
+     * Adds a term to the list on the server and to the local copy.
+     * @param term the term to add
+     */
+    public void addTerm(String term) {
+        try {
+            client.listManagementTerms().addTerm(listId, term, language);
+        } catch (RuntimeException e) {
+            markStale();
+            throw e;
+        }
+        onTermAdded(term);
+    }
+
+    /**
+     * Deletes a term from the list on the server and from the local copy.
+     * @param term the term to delete
+     */
+    public void deleteTerm(String term) {
+        try {
+            client.listManagementTerms().deleteTerm(listId, term, language);
+        } catch (RuntimeException e) {
+            markStale();
+            throw e;
+        }
+        onTermDeleted(term);
+    }
+
+    /**
+     * Applies to the local copy a term that was added to the list elsewhere.
+     * @param term the term added
+     */
+    public synchronized void onTermAdded(String term) {
+        recordChange(term, true);
+        if (terms.add(term)) {
+            version++;
+        }
+    }
+
+    /**
+     * Applies to the local copy a term that was deleted from the list elsewhere.
+     * @param term the term deleted
+     */
+    public synchronized void onTermDeleted(String term) {
+        recordChange(term, false);
+        if (terms.remove(term)) {
+            version++;
+        }
+    }
+
+    /**
+     * Forces the next {@link #reconcile()} to download the full list.
+     */
+    public synchronized void markStale() {
+        stale = true;
+    }
+
+    /**
+     * Sets how long the local copy is trusted when the number of terms on the
+     * server matches it, 15 minutes by default.
+     * @param maxAge the maximum age of the local copy, in milliseconds
+     */
+    public synchronized void setMaxAge(long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Brings the local copy up to date with the server. Asks the server for
+     * the number of terms with a one-term page, and only downloads the full
+     * list if it differs from the local copy, or the local copy is stale or
+     * older than the maximum age.
+     * @return true if the full list was downloaded
+     */
+    public boolean reconcile() {
+        boolean wasStale;
+        int size;
+        synchronized (this) {
+            wasStale = stale || System.currentTimeMillis() - lastFullSync >= maxAge;
+            size = terms.size();
+        }
+        if (!wasStale) {
+            TermsInner first = client.listManagementTerms().getAllTerms(listId, language, 0, 1);
+            TermsPaging paging = first.paging();
+            if (paging != null && paging.total() != null && paging.total() == size) {
+                return false;
+            }
+        }
+        fullSync();
+        return true;
+    }
+
+    /**
+     * Downloads the full list, page by page, and replaces the local copy.
+     * Terms added or deleted during the download are applied again after it.
+     */
+    public void fullSync() {
+        Map<String, Boolean> changes = new HashMap<String, Boolean>();
+        synchronized (this) {
+            changesDuringSync.add(changes);
+        }
+        try {
+            Set<String> downloaded = download();
+            synchronized (this) {
+                for (Map.Entry<String, Boolean> change : changes.entrySet()) {
+                    if (change.getValue()) {
+                        downloaded.add(change.getKey());
+                    } else {
+                        downloaded.remove(change.getKey());
+                    }
+                }
+                if (!downloaded.equals(terms)) {
+                    terms = downloaded;
+                    version++;
+                }
+                stale = false;
+                lastFullSync = System.currentTimeMillis();
+            }
+        } finally {
+            synchronized (this) {
+                changesDuringSync.remove(changes);
+            }
+        }
+    }
+
+    /*
+     * Downloads the terms of the list, page by page.
+     */
+    private Set<String> download() {
+        Set<String> downloaded = new HashSet<String>();
+        int offset = 0;
+        while (true) {
+            TermsInner page = client.listManagementTerms().getAllTerms(listId, language, offset, pageSize);
+            TermsData data = page.data();
+            List<TermsInList> pageTerms = data == null ? null : data.terms();
+            if (pageTerms == null || pageTerms.isEmpty()) {
+                break;
+            }
+            for (TermsInList term : pageTerms) {
+                downloaded.add(term.term());
+            }
+            offset += pageTerms.size();
+            TermsPaging paging = page.paging();
+            if (pageTerms.size() < pageSize || (paging != null && paging.total() != null && offset >= paging.total())) {
+                break;
+            }
+        }
+        return downloaded;
+    }
+
+    /*
+     * Records a change of a term for the downloads running.
+     */
+    private void recordChange(String term, boolean added) {
+        for (Map<String, Boolean> changes : changesDuringSync) {
+            changes.put(term, added);
+        }
+    }
+
+    /**
+     * Returns a screener compiled from the local copy, rebuilt only when
+     * the local copy has changed since the last call.
+     * @return the screener for the local terms
+     */
+    public synchronized TermScreener screener() {
+        if (screener == null || screenerVersion != version) {
+            screener = new TermScreener(listId, terms);
+            screenerVersion = version;
+        }
+        return screener;
+    }
+
+    /**
+     * Saves the local copy and its version to a file, one term per line.
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void save(File file) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write(Long.toString(version));
+            writer.newLine();
+            for (String term : terms) {
+                writer.write(term);
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Loads a local copy saved by {@link #save(File)}. The copy is trusted
+     * until the next {@link #reconcile()} finds it out of date, and for no
+     * longer than the maximum age since the file was saved.
+     * @param file the file to read
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized void load(File file) throws IOException {
+        Set<String> loaded = new HashSet<String>();
+        long loadedVersion;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (line == null) {
+                throw new IOException("The term list snapshot " + file + " is empty.");
+            }
+            loadedVersion = Long.parseLong(line.trim());
+            while ((line = reader.readLine()) != null) {
+                if (line.length() > 0) {
+                    loaded.add(line);
+                }
+            }
+        }
+        terms = loaded;
+        version = Math.max(version + 1, loadedVersion);
+        stale = false;
+        lastFullSync = file.lastModified();
+    }
+}
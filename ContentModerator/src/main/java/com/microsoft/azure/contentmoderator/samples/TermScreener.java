@@ -0,0 +1,285 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import com.microsoft.azure.cognitiveservices.contentmoderator.DetectedTerms;
+import com.microsoft.azure.cognitiveservices.contentmoderator.TermsData;
+import com.microsoft.azure.cognitiveservices.contentmoderator.TermsInList;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ContentModeratorClientImpl;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.TermsInner;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Screens text against a term list locally, without calling the Text
+ * Moderation API. The terms are compiled into an Aho-Corasick automaton, so
+ * the text is scanned once whatever the number of terms. The automaton is
+ * stored in primitive arrays, and matching does not allocate memory.
+ * Matching ignores case and, like the service, only reports whole words.
+ * Use it to pre-screen large volumes of text, and send only the texts with
+ * hits to {@link TermList#ScreenText} for a full moderation.
+ */
+public class TermScreener {
+    /**
+     * Receives the terms found in a text.
+     */
+    public interface MatchHandler {
+        /**
+         * Called for every term found, in the order of their end position.
+         * @param term the index of the term, see {@link TermScreener#term(int)}
+         * @param start the index of the first character of the term in the text
+         * @param end the index after the last character of the term in the text
+         */
+        void onMatch(int term, int start, int end);
+    }
+
+    private static final int None = -1;
+
+    private final String listId;
+
+    private final String[] terms;
+
+    /*
+     * The outgoing edges of state s are edgeChars/edgeTargets[edgeStart[s] .. edgeStart[s + 1]),
+     * sorted by character.
+     */
+    private final int[] edgeStart;
+
+    private final char[] edgeChars;
+
+    private final int[] edgeTargets;
+
+    /*
+     * The state reached on a mismatch: the longest proper suffix of the state that is also a prefix.
+     */
+    private final int[] fail;
+
+    /*
+     * The term that ends at each state, or None.
+     */
+    private final int[] output;
+
+    /*
+     * The next state on the fail chain that ends a term, or None.
+     */
+    private final int[] dictionaryLink;
+
+    /**
+     * Compiles the terms of a term list.
+     * @param listId the ID of the term list, reported with every hit
+     * @param terms the terms of the list
+     */
+    public TermScreener(String listId, Collection<String> terms) {
+        this.listId = listId;
+
+        // Build the trie. Duplicate terms (ignoring case) are kept once.
+        List<TreeMap<Character, Integer>> trie = new ArrayList<TreeMap<Character, Integer>>();
+        List<Integer> outputs = new ArrayList<Integer>();
+        List<String> kept = new ArrayList<String>();
+        trie.add(new TreeMap<Character, Integer>());
+        outputs.add(None);
+        for (String term : terms) {
+            if (term == null || term.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < term.length(); i++) {
+                char c = Character.toLowerCase(term.charAt(i));
+                Integer next = trie.get(state).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(state).put(c, next);
+                    trie.add(new TreeMap<Character, Integer>());
+                    outputs.add(None);
+                }
+                state = next;
+            }
+            if (outputs.get(state) == None) {
+                outputs.set(state, kept.size());
+                kept.add(term);
+            }
+        }
+        this.terms = kept.toArray(new String[kept.size()]);
+
+        // Flatten the trie into arrays.
+        int states = trie.size();
+        this.edgeStart = new int[states + 1];
+        this.edgeChars = new char[states - 1];
+        this.edgeTargets = new int[states - 1];
+        this.output = new int[states];
+        int edge = 0;
+        for (int s = 0; s < states; s++) {
+            edgeStart[s] = edge;
+            output[s] = outputs.get(s);
+            for (Map.Entry<Character, Integer> e : trie.get(s).entrySet()) {
+                edgeChars[edge] = e.getKey();
+                edgeTargets[edge] = e.getValue();
+                edge++;
+            }
+        }
+        edgeStart[states] = edge;
+
+        // Compute the fail and dictionary links, in breadth-first order.
+        this.fail = new int[states];
+        this.dictionaryLink = new int[states];
+        Arrays.fill(dictionaryLink, None);
+        Deque<Integer> queue = new ArrayDeque<Integer>();
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) {
+            fail[edgeTargets[e]] = 0;
+            queue.add(edgeTargets[e]);
+        }
+        while (!queue.isEmpty()) {
+            int s = queue.poll();
+            for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+                int child = edgeTargets[e];
+                char c = edgeChars[e];
+                int f = fail[s];
+                int next;
+                while ((next = transition(f, c)) == None && f != 0) {
+                    f = fail[f];
+                }
+                fail[child] = next == None ? 0 : next;
+                dictionaryLink[child] = output[fail[child]] != None ? fail[child] : dictionaryLink[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Downloads a term list and compiles it.
+     * @param client The Content Moderator client.
+     * @param listId The ID of the term list.
+     * @param language The language of the terms.
+     * @return the screener for the list
+     */
+    public static TermScreener fromTermList(ContentModeratorClientImpl client, String listId, String language) {
+        List<String> terms = new ArrayList<String>();
+        TermsInner result = client.listManagementTerms().getAllTerms(listId, language);
+        TermsData data = result.data();
+        if (data != null && data.terms() != null) {
+            for (TermsInList term : data.terms()) {
+                terms.add(term.term());
+            }
+        }
+        return new TermScreener(listId, terms);
+    }
+
+    /**
+     * @return the number of distinct terms
+     */
+    public int size() {
+        return terms.length;
+    }
+
+    /**
+     * @param index the index of a term, as passed to {@link MatchHandler#onMatch}
+     * @return the term
+     */
+    public String term(int index) {
+        return terms[index];
+    }
+
+    /**
+     * Finds the terms in a text without allocating memory.
+     * @param text the text to screen
+     * @param handler receives the terms found
+     * @return the number of terms found
+     */
+    public int screen(CharSequence text, MatchHandler handler) {
+        int found = 0;
+        int state = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int next;
+            while ((next = transition(state, c)) == None && state != 0) {
+                state = fail[state];
+            }
+            state = next == None ? 0 : next;
+
+            for (int s = output[state] != None ? state : dictionaryLink[state]; s != None; s = dictionaryLink[s]) {
+                int end = i + 1;
+                int start = end - terms[output[s]].length();
+                if (isWordStart(text, start) && isWordEnd(text, end)) {
+                    handler.onMatch(output[s], start, end);
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds the terms in a text.
+     * @param text the text to screen
+     * @return the terms found, in the same form as the Text Moderation API returns them
+     */
+    public List<DetectedTerms> screen(CharSequence text) {
+        final List<DetectedTerms> detected = new ArrayList<DetectedTerms>();
+        screen(text, new MatchHandler() {
+            @Override
+            public void onMatch(int term, int start, int end) {
+                detected.add(new DetectedTerms()
+                        .withIndex(start)
+                        .withOriginalIndex(start)
+                        .withListId(listId)
+                        .withTerm(terms[term]));
+            }
+        });
+        return detected;
+    }
+
+    /**
+     * @param text the text to screen
+     * @return true if the text contains at least one term
+     */
+    public boolean matches(CharSequence text) {
+        final boolean[] found = new boolean[1];
+        screen(text, new MatchHandler() {
+            @Override
+            public void onMatch(int term, int start, int end) {
+                found[0] = true;
+            }
+        });
+        return found[0];
+    }
+
+    /*
+     * Returns the target of the edge of a state for a character, or None.
+     */
+    private int transition(int state, char c) {
+        int low = edgeStart[state];
+        int high = edgeStart[state + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char m = edgeChars[middle];
+            if (m < c) {
+                low = middle + 1;
+            } else if (m > c) {
+                high = middle - 1;
+            } else {
+                return edgeTargets[middle];
+            }
+        }
+        return None;
+    }
+
+    private static boolean isWordStart(CharSequence text, int start) {
+        return start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1));
+    }
+
+    private static boolean isWordEnd(CharSequence text, int end) {
+        return end == text.length() || !Character.isLetterOrDigit(text.charAt(end));
+    }
+}
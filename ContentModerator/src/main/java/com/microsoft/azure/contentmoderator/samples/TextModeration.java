@@ -1,9 +1,11 @@
 package com.microsoft.azure.contentmoderator.samples;
 
+import com.microsoft.azure.cognitiveservices.contentmoderator.DetectedTerms;
 import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ContentModeratorClientImpl;
 import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ScreenInner;
 
 import java.io.*;
+import java.util.function.Consumer;
 
 public class TextModeration {
     /*
@@ -13,6 +15,11 @@ public class TextModeration {
      */
     private static String TextFile = "TextFile.txt";
 
+    /*
+     * The number of batches of messages screened at the same time.
+     */
+    private static int Threads = 4;
+
     static void execute(ContentModeratorClientImpl client) throws IOException {
 
         String text = Samples.readFileContents(TextFile);
@@ -36,6 +43,29 @@ public class TextModeration {
             System.out.println("    Racy score: " + result.classification().racyScore());
             System.out.println("    Review recommended: " + result.classification().reviewRecommended());
         }
+
+        // Screen each line of the input file as a separate message, as for
+        // chat traffic: short lines are packed into a few requests.
+        System.out.println("Screen each line as a message.");
+        try (MappedLineReader inputFile = new MappedLineReader(new File(TextFile));
+             TextModerationService service = new TextModerationService(client, "eng", Threads)) {
+            long messages = service.screen(inputFile.all(), new Consumer<TextModerationService.MessageResult>() {
+                @Override
+                public void accept(TextModerationService.MessageResult message) {
+                    if (message.Error != null) {
+                        System.out.println("Line " + (message.Index + 1) + " failed: " + message.Error.getMessage());
+                        return;
+                    }
+                    for (DetectedTerms term : message.Terms) {
+                        System.out.println("Line " + (message.Index + 1) + ", index " + term.index()
+                                + ": " + term.term());
+                    }
+                }
+            });
+            System.out.println("Screened " + messages + " lines.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
 }
@@ -0,0 +1,305 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import com.microsoft.azure.cognitiveservices.contentmoderator.DetectedTerms;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ContentModeratorClientImpl;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ScreenInner;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Screens a stream of short messages, such as chat traffic, with the Text
+ * Moderation API.
+ * Messages are packed, in order, into batches no longer than the Text
+ * Moderation API accepts, separated by line feeds; a message is only split
+ * when it is too long on its own. The batches are screened concurrently,
+ * with a bounded number of requests in flight, and the rate limiter of the
+ * client keeps the requests within the quota of the subscription. The terms
+ * found in a batch are mapped back to their messages, and the results are
+ * delivered one per message, in the order of the messages.
+ */
+public class TextModerationService implements Closeable {
+    /*
+     * The maximum length of the text screened by one request.
+     */
+    public static final int MaxBatchLength = 1024;
+
+    /**
+     * The outcome of screening a message.
+     */
+    public static class MessageResult {
+        /*
+         * The position of the message in the stream, from 0.
+         */
+        public long Index;
+
+        public String Message;
+
+        /*
+         * The terms found in the message, with their index in the message.
+         */
+        public List<DetectedTerms> Terms = new ArrayList<DetectedTerms>();
+
+        /*
+         * The error of a batch holding the message, or null if it was screened.
+         */
+        public Exception Error;
+    }
+
+    /*
+     * A batch of messages: pieces of messages separated by line feeds.
+     */
+    private static class Batch {
+        final StringBuilder Text = new StringBuilder();
+
+        /*
+         * For each piece: its start in the batch, its message, its start in the
+         * message, and whether it ends its message.
+         */
+        int[] PieceStarts = new int[16];
+
+        MessageResult[] PieceMessages = new MessageResult[16];
+
+        int[] PieceMessageOffsets = new int[16];
+
+        boolean[] PieceLasts = new boolean[16];
+
+        int Pieces;
+
+        CompletableFuture<ScreenInner> Screen;
+
+        void add(String piece, MessageResult message, int messageOffset, boolean last) {
+            if (Pieces == PieceStarts.length) {
+                PieceStarts = Arrays.copyOf(PieceStarts, Pieces * 2);
+                PieceMessages = Arrays.copyOf(PieceMessages, Pieces * 2);
+                PieceMessageOffsets = Arrays.copyOf(PieceMessageOffsets, Pieces * 2);
+                PieceLasts = Arrays.copyOf(PieceLasts, Pieces * 2);
+            }
+            if (Pieces > 0) {
+                Text.append('\n');
+            }
+            PieceStarts[Pieces] = Text.length();
+            PieceMessages[Pieces] = message;
+            PieceMessageOffsets[Pieces] = messageOffset;
+            PieceLasts[Pieces] = last;
+            Pieces++;
+            Text.append(piece);
+        }
+
+        /*
+         * Returns the piece that holds a position of the batch.
+         */
+        int pieceAt(int offset) {
+            int piece = Arrays.binarySearch(PieceStarts, 0, Pieces, offset);
+            return piece >= 0 ? piece : Math.max(0, -piece - 2);
+        }
+    }
+
+    private final ContentModeratorClientImpl client;
+
+    private final String language;
+
+    private final int maxBatchLength;
+
+    private final int maxInFlight;
+
+    private final ExecutorService executor;
+
+    /**
+     * Creates a service that screens batches of up to {@link #MaxBatchLength}
+     * characters, with up to two batches in flight per thread.
+     * @param client The Content Moderator client.
+     * @param language The language of the messages, such as "eng".
+     * @param threads The number of batches screened at the same time.
+     */
+    public TextModerationService(ContentModeratorClientImpl client, String language, int threads) {
+        this(client, language, threads, 2 * threads, MaxBatchLength);
+    }
+
+    /**
+     * Creates a service.
+     * @param client The Content Moderator client.
+     * @param language The language of the messages, such as "eng".
+     * @param threads The number of batches screened at the same time.
+     * @param maxInFlight The maximum number of batches screened or waiting to be delivered.
+     * @param maxBatchLength The maximum length of the text screened by one request.
+     */
+    public TextModerationService(ContentModeratorClientImpl client, String language, int threads,
+                                 int maxInFlight, int maxBatchLength) {
+        if (threads < 1 || maxInFlight < 1 || maxBatchLength < 1) {
+            throw new IllegalArgumentException("threads, maxInFlight and maxBatchLength must be at least 1.");
+        }
+        this.client = client;
+        this.language = language;
+        this.maxInFlight = maxInFlight;
+        this.maxBatchLength = maxBatchLength;
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "text-moderation-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Screens messages, and delivers their results in order on the calling thread.
+     * Reading the messages blocks while the maximum number of batches is in flight.
+     * @param messages The messages to screen.
+     * @param consumer Receives the result of each message, in the order of the messages.
+     * @return the number of messages screened
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    public long screen(Iterator<String> messages, Consumer<MessageResult> consumer) throws InterruptedException {
+        Deque<Batch> pending = new ArrayDeque<Batch>();
+        Batch batch = new Batch();
+        long index = 0;
+        while (messages.hasNext()) {
+            MessageResult message = new MessageResult();
+            message.Index = index++;
+            message.Message = messages.next();
+            String text = message.Message == null ? "" : message.Message;
+
+            int start = 0;
+            do {
+                int end = Math.min(text.length(), start + maxBatchLength);
+                if (end < text.length()) {
+                    int space = text.lastIndexOf(' ', end);
+                    if (space > start) {
+                        end = space;
+                    }
+                }
+                int separator = batch.Pieces > 0 ? 1 : 0;
+                if (batch.Pieces > 0 && batch.Text.length() + separator + end - start > maxBatchLength) {
+                    send(batch, pending, consumer);
+                    batch = new Batch();
+                }
+                batch.add(text.substring(start, end), message, start, end == text.length());
+                start = end;
+            } while (start < text.length());
+        }
+        if (batch.Pieces > 0) {
+            send(batch, pending, consumer);
+        }
+        while (!pending.isEmpty()) {
+            deliver(pending.poll(), consumer);
+        }
+        return index;
+    }
+
+    /**
+     * Screens a list of messages.
+     * @param messages The messages to screen.
+     * @return the result of each message, in the order of the messages
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    public List<MessageResult> screen(List<String> messages) throws InterruptedException {
+        final List<MessageResult> results = new ArrayList<MessageResult>(messages.size());
+        screen(messages.iterator(), new Consumer<MessageResult>() {
+            @Override
+            public void accept(MessageResult result) {
+                results.add(result);
+            }
+        });
+        return results;
+    }
+
+    /*
+     * Starts screening a batch once there is room for it, delivering the
+     * batches that have been screened in the meantime.
+     */
+    private void send(Batch batch, Deque<Batch> pending, Consumer<MessageResult> consumer)
+            throws InterruptedException {
+        while (!pending.isEmpty() && pending.peek().Screen.isDone()) {
+            deliver(pending.poll(), consumer);
+        }
+        // Wait for the oldest batch, to deliver in order, while the maximum is in flight.
+        while (pending.size() >= maxInFlight) {
+            deliver(pending.poll(), consumer);
+        }
+        startScreen(batch, pending);
+    }
+
+    private void startScreen(final Batch batch, Deque<Batch> pending) {
+        final String text = batch.Text.toString();
+        if (text.trim().isEmpty()) {
+            // Nothing to screen; the messages are empty.
+            batch.Screen = CompletableFuture.completedFuture(null);
+        } else {
+            batch.Screen = CompletableFuture.supplyAsync(new Supplier<ScreenInner>() {
+                @Override
+                public ScreenInner get() {
+                    return client.textModerations().screenText(language, "text/plain", text);
+                }
+            }, executor);
+        }
+        pending.add(batch);
+    }
+
+    /*
+     * Waits for a batch to be screened, and delivers the messages it ends.
+     */
+    private void deliver(Batch batch, Consumer<MessageResult> consumer) throws InterruptedException {
+        ScreenInner screen = null;
+        Exception error = null;
+        try {
+            screen = batch.Screen.get();
+        } catch (ExecutionException e) {
+            error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+
+        if (screen != null && screen.terms() != null) {
+            for (DetectedTerms term : screen.terms()) {
+                Integer index = term.originalIndex() != null ? term.originalIndex() : term.index();
+                if (index == null) {
+                    continue;
+                }
+                int piece = batch.pieceAt(index);
+                int messageIndex = batch.PieceMessageOffsets[piece] + index - batch.PieceStarts[piece];
+                batch.PieceMessages[piece].Terms.add(new DetectedTerms()
+                        .withIndex(messageIndex)
+                        .withOriginalIndex(messageIndex)
+                        .withListId(term.listId())
+                        .withTerm(term.term()));
+            }
+        }
+        for (int piece = 0; piece < batch.Pieces; piece++) {
+            MessageResult message = batch.PieceMessages[piece];
+            if (error != null && message.Error == null) {
+                message.Error = error;
+            }
+            if (batch.PieceLasts[piece]) {
+                consumer.accept(message);
+            }
+        }
+    }
+
+    /**
+     * Stops the threads of the service.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+/**
+ * A cue of a WebVTT transcript: the text spoken between two timestamps.
+ * See {@link WebVttTranscript} to read the cues of a transcript.
+ */
+public class TranscriptCue {
+    /*
+     * The time, in milliseconds from the start of the video, at which the cue starts.
+     */
+    public long Start;
+
+    /*
+     * The time, in milliseconds from the start of the video, at which the cue ends.
+     */
+    public long End;
+
+    /*
+     * The text of the cue; lines of a multi-line cue are separated by a line feed.
+     */
+    public String Text;
+
+    public TranscriptCue() {
+    }
+
+    public TranscriptCue(long start, long end, String text) {
+        this.Start = start;
+        this.End = end;
+        this.Text = text;
+    }
+}
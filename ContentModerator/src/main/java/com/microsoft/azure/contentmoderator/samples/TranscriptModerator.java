@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import com.microsoft.azure.cognitiveservices.contentmoderator.DetectedTerms;
+import com.microsoft.azure.cognitiveservices.contentmoderator.TranscriptModerationBodyItemTermsItem;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ContentModeratorClientImpl;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ScreenInner;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.TranscriptModerationBodyItemInner;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Screens the cues of a video transcript with the Text Moderation API and
+ * builds the moderation results to add to a video review.
+ * The cues are packed, in order, into chunks no longer than the Text
+ * Moderation API accepts, never splitting a cue unless the cue alone is too
+ * long. The chunks are screened concurrently, and the position of every
+ * term found is mapped back to its cue, so that each result carries the
+ * timestamp of the cue and the index of the term in the text of that cue.
+ */
+public class TranscriptModerator implements Closeable {
+    /*
+     * The maximum length of the text screened by one request.
+     */
+    public static final int MaxChunkLength = 1024;
+
+    /*
+     * A chunk of the transcript: pieces of cues separated by line feeds.
+     */
+    private static class Chunk {
+        final StringBuilder Text = new StringBuilder();
+
+        /*
+         * For each piece: its start in the chunk, its cue, and its start in the text of the cue.
+         */
+        int[] PieceStarts = new int[8];
+
+        int[] PieceCues = new int[8];
+
+        int[] PieceCueOffsets = new int[8];
+
+        int Pieces;
+
+        void add(String piece, int cue, int cueOffset) {
+            if (Pieces == PieceStarts.length) {
+                PieceStarts = Arrays.copyOf(PieceStarts, Pieces * 2);
+                PieceCues = Arrays.copyOf(PieceCues, Pieces * 2);
+                PieceCueOffsets = Arrays.copyOf(PieceCueOffsets, Pieces * 2);
+            }
+            if (Text.length() > 0) {
+                Text.append('\n');
+            }
+            PieceStarts[Pieces] = Text.length();
+            PieceCues[Pieces] = cue;
+            PieceCueOffsets[Pieces] = cueOffset;
+            Pieces++;
+            Text.append(piece);
+        }
+
+        /*
+         * Returns the piece that holds a position of the chunk.
+         */
+        int pieceAt(int offset) {
+            int piece = Arrays.binarySearch(PieceStarts, 0, Pieces, offset);
+            return piece >= 0 ? piece : Math.max(0, -piece - 2);
+        }
+    }
+
+    private final ContentModeratorClientImpl client;
+
+    private final String language;
+
+    private final int maxChunkLength;
+
+    private final ExecutorService executor;
+
+    /**
+     * Creates a moderator that screens chunks of up to {@link #MaxChunkLength} characters.
+     * @param client The Content Moderator client.
+     * @param language The language of the transcript, such as "eng".
+     * @param threads The number of chunks screened at the same time.
+     */
+    public TranscriptModerator(ContentModeratorClientImpl client, String language, int threads) {
+        this(client, language, threads, MaxChunkLength);
+    }
+
+    /**
+     * Creates a moderator.
+     * @param client The Content Moderator client.
+     * @param language The language of the transcript, such as "eng".
+     * @param threads The number of chunks screened at the same time.
+     * @param maxChunkLength The maximum length of the text screened by one request.
+     */
+    public TranscriptModerator(ContentModeratorClientImpl client, String language, int threads,
+                               int maxChunkLength) {
+        if (threads < 1 || maxChunkLength < 1) {
+            throw new IllegalArgumentException("threads and maxChunkLength must be at least 1.");
+        }
+        this.client = client;
+        this.language = language;
+        this.maxChunkLength = maxChunkLength;
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "transcript-moderation-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Screens the cues of a transcript.
+     * @param cues The cues, in the order of the transcript.
+     * @return one moderation result per cue in which terms were found, in the order of the cues
+     * @throws InterruptedException if the calling thread is interrupted.
+     * @throws ExecutionException if a chunk could not be screened.
+     */
+    public List<TranscriptModerationBodyItemInner> moderate(List<TranscriptCue> cues)
+            throws InterruptedException, ExecutionException {
+        List<Chunk> chunks = split(cues);
+
+        List<CompletableFuture<ScreenInner>> screens = new ArrayList<CompletableFuture<ScreenInner>>(chunks.size());
+        for (final Chunk chunk : chunks) {
+            screens.add(CompletableFuture.supplyAsync(new Supplier<ScreenInner>() {
+                @Override
+                public ScreenInner get() {
+                    return client.textModerations().screenText(language, "text/plain", chunk.Text.toString());
+                }
+            }, executor));
+        }
+
+        // Collect the terms of each cue, indexed by cue.
+        Map<Integer, List<TranscriptModerationBodyItemTermsItem>> terms =
+                new TreeMap<Integer, List<TranscriptModerationBodyItemTermsItem>>();
+        for (int c = 0; c < chunks.size(); c++) {
+            Chunk chunk = chunks.get(c);
+            ScreenInner screen = screens.get(c).get();
+            if (screen == null || screen.terms() == null) {
+                continue;
+            }
+            for (DetectedTerms term : screen.terms()) {
+                Integer index = term.originalIndex() != null ? term.originalIndex() : term.index();
+                if (index == null) {
+                    continue;
+                }
+                int piece = chunk.pieceAt(index);
+                int cue = chunk.PieceCues[piece];
+                List<TranscriptModerationBodyItemTermsItem> cueTerms = terms.get(cue);
+                if (cueTerms == null) {
+                    cueTerms = new ArrayList<TranscriptModerationBodyItemTermsItem>();
+                    terms.put(cue, cueTerms);
+                }
+                cueTerms.add(new TranscriptModerationBodyItemTermsItem()
+                        .withIndex(chunk.PieceCueOffsets[piece] + index - chunk.PieceStarts[piece])
+                        .withTerm(term.term()));
+            }
+        }
+
+        List<TranscriptModerationBodyItemInner> results = new ArrayList<TranscriptModerationBodyItemInner>(terms.size());
+        for (Map.Entry<Integer, List<TranscriptModerationBodyItemTermsItem>> cueTerms : terms.entrySet()) {
+            results.add(new TranscriptModerationBodyItemInner()
+                    .withTimestamp(String.valueOf(cues.get(cueTerms.getKey()).Start))
+                    .withTerms(cueTerms.getValue()));
+        }
+        return results;
+    }
+
+    /*
+     * Packs the cues into chunks, splitting the cues that are too long at a space.
+     */
+    private List<Chunk> split(List<TranscriptCue> cues) {
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        Chunk chunk = new Chunk();
+        for (int c = 0; c < cues.size(); c++) {
+            String text = cues.get(c).Text;
+            if (text == null) {
+                continue;
+            }
+            int start = 0;
+            while (start < text.length()) {
+                int end = Math.min(text.length(), start + maxChunkLength);
+                if (end < text.length()) {
+                    int space = text.lastIndexOf(' ', end);
+                    if (space > start) {
+                        end = space;
+                    }
+                }
+                int separator = chunk.Text.length() > 0 ? 1 : 0;
+                if (chunk.Text.length() + separator + end - start > maxChunkLength) {
+                    chunks.add(chunk);
+                    chunk = new Chunk();
+                }
+                chunk.add(text.substring(start, end), c, start);
+                start = end;
+            }
+        }
+        if (chunk.Pieces > 0) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Stops the threads of the moderator.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,341 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ContentModeratorClientImpl;
+import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.VideoFrameBodyItemInner;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Adds the frames of a video to a video review in batches.
+ * Frames are read from a source, such as a manifest of timestamped frame
+ * URLs, and put in a bounded queue; sender threads take up to a batch of
+ * frames at a time from the queue and add them with a single
+ * addVideoFrameUrl request. When the senders fall behind, the queue fills up
+ * and reading the source blocks, so a video with thousands of frames never
+ * has more than the queue in memory.
+ */
+public class VideoFramePipeline implements Closeable {
+    /**
+     * The outcome of adding the frames of a video.
+     */
+    public static class Result {
+        /*
+         * The number of frames added.
+         */
+        public int Added;
+
+        /*
+         * The number of addVideoFrameUrl requests sent.
+         */
+        public int Batches;
+
+        /*
+         * The frames that could not be added, and the error for each, indexed by timestamp.
+         */
+        public Map<String, Exception> Failed;
+    }
+
+    /*
+     * Marks the end of the frames in the queue.
+     */
+    private static final VideoFrameBodyItemInner EndOfFrames = new VideoFrameBodyItemInner();
+
+    /*
+     * Finds the last number in a file name, taken as the timestamp of the frame in seconds.
+     */
+    private static final Pattern TimestampInName = Pattern.compile("(\\d+)(?!.*\\d)");
+
+    private final ContentModeratorClientImpl client;
+
+    private final String teamName;
+
+    private final ExecutorService executor;
+
+    private final int threads;
+
+    private final int batchSize;
+
+    private final int queueCapacity;
+
+    /**
+     * Creates a pipeline that sends batches of 100 frames.
+     * @param client The Content Moderator client.
+     * @param teamName The name of your review team.
+     * @param threads The number of threads sending batches.
+     */
+    public VideoFramePipeline(ContentModeratorClientImpl client, String teamName, int threads) {
+        this(client, teamName, threads, 100, 4 * 100 * threads);
+    }
+
+    /**
+     * Creates a pipeline.
+     * @param client The Content Moderator client.
+     * @param teamName The name of your review team.
+     * @param threads The number of threads sending batches.
+     * @param batchSize The maximum number of frames per request.
+     * @param queueCapacity The maximum number of frames read ahead of the senders.
+     */
+    public VideoFramePipeline(ContentModeratorClientImpl client, String teamName, int threads,
+                              int batchSize, int queueCapacity) {
+        if (threads < 1 || batchSize < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("threads, batchSize and queueCapacity must be at least 1.");
+        }
+        this.client = client;
+        this.teamName = teamName;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "video-frames-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Adds frames to a video review, and waits until all of them are added or have failed.
+     * @param reviewId The video review ID.
+     * @param frames The frames to add.
+     * @return the outcome
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    public Result push(final String reviewId, Iterator<VideoFrameBodyItemInner> frames)
+            throws InterruptedException {
+        final BlockingQueue<VideoFrameBodyItemInner> queue =
+                new ArrayBlockingQueue<VideoFrameBodyItemInner>(queueCapacity);
+        final Map<String, Exception> failed = new ConcurrentHashMap<String, Exception>();
+        final AtomicInteger added = new AtomicInteger();
+        final AtomicInteger batches = new AtomicInteger();
+
+        List<Future<?>> senders = new ArrayList<Future<?>>(threads);
+        for (int i = 0; i < threads; i++) {
+            senders.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        send(reviewId, queue, added, batches, failed);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }));
+        }
+
+        try {
+            while (frames.hasNext()) {
+                queue.put(frames.next());
+            }
+        } finally {
+            queue.put(EndOfFrames);
+        }
+        for (Future<?> sender : senders) {
+            try {
+                sender.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        Result result = new Result();
+        result.Added = added.get();
+        result.Batches = batches.get();
+        result.Failed = Collections.unmodifiableMap(failed);
+        return result;
+    }
+
+    /*
+     * Sends batches of frames until the end of the frames is reached.
+     */
+    private void send(String reviewId, BlockingQueue<VideoFrameBodyItemInner> queue, AtomicInteger added,
+                      AtomicInteger batches, Map<String, Exception> failed) throws InterruptedException {
+        List<VideoFrameBodyItemInner> batch = new ArrayList<VideoFrameBodyItemInner>(batchSize);
+        boolean done = false;
+        while (!done) {
+            batch.clear();
+            batch.add(queue.take());
+            queue.drainTo(batch, batchSize - 1);
+            int end = batch.indexOf(EndOfFrames);
+            if (end >= 0) {
+                // Leave the marker for the other senders.
+                batch.subList(end, batch.size()).clear();
+                queue.put(EndOfFrames);
+                done = true;
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                client.reviews().addVideoFrameUrl("application/json", teamName, reviewId,
+                        new ArrayList<VideoFrameBodyItemInner>(batch));
+                added.addAndGet(batch.size());
+            } catch (Exception e) {
+                for (VideoFrameBodyItemInner frame : batch) {
+                    failed.put(frame.timestamp(), e);
+                }
+            }
+            batches.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stops the threads of the pipeline.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Reads frames from a manifest, one frame per line: the timestamp of the
+     * frame in seconds, then the URL of the frame image, separated by spaces,
+     * a tab or a comma. Empty lines and lines starting with # are skipped.
+     * @param lines The lines of the manifest.
+     * @return the frames
+     */
+    public static Iterator<VideoFrameBodyItemInner> fromManifest(final Iterator<String> lines) {
+        return new FrameIterator() {
+            @Override
+            VideoFrameBodyItemInner read() {
+                while (lines.hasNext()) {
+                    String line = lines.next().trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    String[] fields = line.split("[\\s,]+", 2);
+                    if (fields.length < 2) {
+                        throw new IllegalArgumentException("Expected a timestamp and a URL: " + line);
+                    }
+                    long milliseconds = Math.round(Double.parseDouble(fields[0]) * 1000);
+                    return frame(milliseconds, fields[1].trim());
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Reads frames from a list of frame image URLs, sampled at a fixed interval.
+     * @param urls The URLs of the frames, in order.
+     * @param intervalMillis The time, in milliseconds, between two frames.
+     * @return the frames
+     */
+    public static Iterator<VideoFrameBodyItemInner> fromUrlList(final Iterator<String> urls,
+                                                                final long intervalMillis) {
+        return new FrameIterator() {
+            private long index;
+
+            @Override
+            VideoFrameBodyItemInner read() {
+                while (urls.hasNext()) {
+                    String url = urls.next().trim();
+                    if (!url.isEmpty()) {
+                        return frame(intervalMillis * index++, url);
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Reads frames from a directory of frame images published under a base
+     * URL. The last number in each file name is the timestamp of the frame in
+     * seconds, as in "frame-0017.png"; files without a number are skipped.
+     * @param directory The directory of frame images.
+     * @param baseUrl The URL under which the files of the directory are published.
+     * @return the frames, in the order of their file names
+     */
+    public static Iterator<VideoFrameBodyItemInner> fromDirectory(File directory, final String baseUrl) {
+        final String[] names = directory.list();
+        if (names == null) {
+            throw new IllegalArgumentException(directory + " is not a directory.");
+        }
+        Arrays.sort(names);
+        final String prefix = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        return new FrameIterator() {
+            private int index;
+
+            @Override
+            VideoFrameBodyItemInner read() {
+                while (index < names.length) {
+                    String name = names[index++];
+                    Matcher timestamp = TimestampInName.matcher(name);
+                    if (timestamp.find()) {
+                        return frame(Long.parseLong(timestamp.group(1)) * 1000, prefix + name);
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    private static VideoFrameBodyItemInner frame(long milliseconds, String url) {
+        return new VideoFrameBodyItemInner()
+                .withTimestamp(String.valueOf(milliseconds))
+                .withFrameImage(url);
+    }
+
+    /*
+     * An iterator over frames read one at a time.
+     */
+    private abstract static class FrameIterator implements Iterator<VideoFrameBodyItemInner> {
+        private VideoFrameBodyItemInner next;
+
+        /*
+         * Returns the next frame, or null at the end.
+         */
+        abstract VideoFrameBodyItemInner read();
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = read();
+            }
+            return next != null;
+        }
+
+        @Override
+        public VideoFrameBodyItemInner next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            VideoFrameBodyItemInner frame = next;
+            next = null;
+            return frame;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -5,16 +5,12 @@ import com.microsoft.azure.cognitiveservices.contentmoderator.VideoFrameBodyItem
 import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.*;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 public class VideoReviews {
-    /*
-     * The minimum amount of time, in milliseconds, to wait between calls
-     * to the Image List API.
-     */
-    private static final int throttleRate = 2000;
-
     /*
      * Create a video review. For more information, see the API reference:
      * https://westus2.dev.cognitive.microsoft.com/docs/services/580519463f9b070e5c591178/operations/580519483f9b0709fc47f9c4
@@ -34,9 +30,9 @@ public class VideoReviews {
                 .withContent(content)
                 .withContentId(id)
                 .withStatus("Unpublished");
+        body.add(item);
 
-        List<String> result = client.reviews().createVideoReviews(Samples.TeamName, "application/json", body);
-        Thread.sleep(throttleRate);
+        List<String> result = client.reviews().createVideoReviews("application/json", Samples.TeamName, body);
         // We created only one review.
         return result.get(0);
     }
@@ -72,20 +68,28 @@ public class VideoReviews {
     }
 
     /*
-     * Add a video frame to the indicated video review. For more information, see the API reference:
+     * Add video frames to the indicated video review, in batches. For more information, see the API reference:
      * https://westus2.dev.cognitive.microsoft.com/docs/services/580519463f9b070e5c591178/operations/59e7b76ae7151f0b10d451fd
+     * To add the frames of a whole video, pass VideoFramePipeline.fromManifest or fromDirectory.
      * @param client The Content Moderator client.
      * @param review_id The video review ID.
-     * @param url The URL of the video frame image.
+     * @param frames The video frames.
      */
-
-    static void AddFrame(ContentModeratorClientImpl client, String review_id, String url, String timestamp_seconds) throws InterruptedException {
+    static void AddFrames(ContentModeratorClientImpl client, String review_id, Iterator<VideoFrameBodyItemInner> frames)
+            throws InterruptedException {
         System.out.println(
-                String.format("Adding a frame to the review with ID %s.", review_id));
-        List<VideoFrameBodyItemInner> frames = new ArrayList<VideoFrameBodyItemInner>();
-        frames.add(CreateFrameToAddToReview(url, timestamp_seconds));
-        client.reviews().addVideoFrameUrl("application/json", Samples.TeamName, review_id, frames);
-        Thread.sleep(throttleRate);
+                String.format("Adding frames to the review with ID %s.", review_id));
+        try (VideoFramePipeline pipeline = new VideoFramePipeline(client, Samples.TeamName, 2))
+        {
+            VideoFramePipeline.Result result = pipeline.push(review_id, frames);
+            System.out.println(
+                    String.format("Added %d frames in %d requests.", result.Added, result.Batches));
+            for (Map.Entry<String, Exception> failure : result.Failed.entrySet())
+            {
+                System.out.println(String.format("Unable to add the frame at %s ms: %s", failure.getKey(),
+                        failure.getValue().getMessage()));
+            }
+        }
     }
 
     /*
@@ -98,7 +102,6 @@ public class VideoReviews {
         System.out.println(
                 String.format("Getting frames for the review with ID %s.", review_id));
         FramesInner result = client.reviews().getVideoFrames(Samples.TeamName, review_id);
-        Thread.sleep(throttleRate);
     }
 
     /*
@@ -111,7 +114,6 @@ public class VideoReviews {
         System.out.println(
                 String.format("Getting the status for the review with ID %s.", review_id));
         ReviewInner result = client.reviews().getReview(Samples.TeamName, review_id);
-        Thread.sleep(throttleRate);
     }
 
     /*
@@ -124,7 +126,6 @@ public class VideoReviews {
         System.out.println(
                 String.format("Publishing the review with ID %s.", review_id));
         client.reviews().publishVideoReview(Samples.TeamName, review_id);
-        Thread.sleep(throttleRate);
     }
 
     public static void execute(ContentModeratorClientImpl client) throws InterruptedException {
@@ -137,9 +138,11 @@ public class VideoReviews {
         String frame3_url = "https://blobthebuilder.blob.core.windows.net/sampleframes/ams-video-frame-3-02-24.PNG";
 
         // Add the frames from 17, 64, and 144 seconds.
-        AddFrame(client, review_id, frame1_url, "17");
-        AddFrame(client, review_id, frame2_url, "64");
-        AddFrame(client, review_id, frame3_url, "144");
+        List<VideoFrameBodyItemInner> frames = new ArrayList<VideoFrameBodyItemInner>();
+        frames.add(CreateFrameToAddToReview(frame1_url, "17"));
+        frames.add(CreateFrameToAddToReview(frame2_url, "64"));
+        frames.add(CreateFrameToAddToReview(frame3_url, "144"));
+        AddFrames(client, review_id, frames.iterator());
 
         // Get frames information and show
         GetFrames(client, review_id);
@@ -1,22 +1,15 @@
 package com.microsoft.azure.contentmoderator.samples;
 
-import com.microsoft.azure.cognitiveservices.contentmoderator.DetectedTerms;
 import com.microsoft.azure.cognitiveservices.contentmoderator.TranscriptModerationBodyItemTermsItem;
 import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ContentModeratorClientImpl;
 import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.CreateVideoReviewsBodyItemInner;
-import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.ScreenInner;
 import com.microsoft.azure.cognitiveservices.contentmoderator.implementation.TranscriptModerationBodyItemInner;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 public class VideoTranscriptReviews {
-    /*
-     * The minimum amount of time, in milliseconds, to wait between calls
-     * to the Image List API.
-     */
-    private static final int throttleRate = 2000;
-
     /*
      * Create a video review. For more information, see the API reference:
      * https://westus2.dev.cognitive.microsoft.com/docs/services/580519463f9b070e5c591178/operations/580519483f9b0709fc47f9c4
@@ -32,8 +25,8 @@ public class VideoTranscriptReviews {
                 .withContent(content)
                 .withContentId(id)
                 .withStatus("Unpublished");
+        body.add(item);
         List<String> result = client.reviews().createVideoReviews("application/json", Samples.TeamName, body);
-        Thread.sleep(throttleRate);
         // We created only one review.
         return result.get(0);
     }
@@ -47,50 +40,42 @@ public class VideoTranscriptReviews {
      * @param review_id The video review ID.
      * @param transcript The video transcript.
      */
-    static void AddTranscript(ContentModeratorClientImpl client, String review_id, String transcript) throws InterruptedException {
+    static void AddTranscript(ContentModeratorClientImpl client, String review_id, WebVttTranscript transcript) throws InterruptedException {
         System.out.println(
-                String.format("Adding a transcript to the review with ID %s.", review_id));
-        client.reviews().addVideoTranscript(Samples.TeamName, review_id, review_id.getBytes());
-        Thread.sleep(throttleRate);
+                String.format("Adding a transcript with %d cues to the review with ID %s.", transcript.size(), review_id));
+        client.reviews().addVideoTranscript(Samples.TeamName, review_id, transcript.toByteArray());
     }
 
     /*
      * Add the results of moderating a video transcript to the indicated video review.
+     * The cues of the transcript are screened in chunks, concurrently, and every
+     * term found is reported at the timestamp of its cue.
      * For more information, see the API reference:
      * https://westus2.dev.cognitive.microsoft.com/docs/services/580519463f9b070e5c591178/operations/59e7b93ce7151f0b10d451ff
      * @param client The Content Moderator client.
      * @param review_id The video review ID.
      * @param transcript The video transcript.
      */
-    static void AddTranscriptModerationResult(ContentModeratorClientImpl client, String review_id, String transcript) throws InterruptedException {
+    static void AddTranscriptModerationResult(ContentModeratorClientImpl client, String review_id, WebVttTranscript transcript)
+            throws InterruptedException, ExecutionException {
         System.out.println(
                 String.format("Adding a transcript moderation result to the review with ID %s.", review_id));
 
         // Screen the transcript using the Text Moderation API. For more information, see:
         // https://westus2.dev.cognitive.microsoft.com/docs/services/57cf753a3f9b070c105bd2c1/operations/57cf753a3f9b070868a1f66f
-        ScreenInner screen = client.textModerations().screenText("eng", "text/plain", transcript);
-
-        // Map the term list returned by ScreenText into a term list we can pass to AddVideoTranscriptModerationResult.
-        List<TranscriptModerationBodyItemTermsItem> terms = new ArrayList<TranscriptModerationBodyItemTermsItem>();
-        if (null != screen.terms())
+        List<TranscriptModerationBodyItemInner> body;
+        try (TranscriptModerator moderator = new TranscriptModerator(client, "eng", 4))
         {
-            for (DetectedTerms term : screen.terms())
-            {
-                if (term.index() != null)
-                {
-                    terms.add(new TranscriptModerationBodyItemTermsItem()
-                            .withIndex(term.index())
-                            .withTerm(term.term()));
-                }
-            }
+            body = moderator.moderate(transcript.cues());
+        }
+        if (body.isEmpty())
+        {
+            // No term was found: report a clean transcript, as a single item without terms.
+            body.add(new TranscriptModerationBodyItemInner()
+                    .withTimestamp("0")
+                    .withTerms(new ArrayList<TranscriptModerationBodyItemTermsItem>()));
         }
-
-        List<TranscriptModerationBodyItemInner> body = new ArrayList<TranscriptModerationBodyItemInner>();
-        body.add(new TranscriptModerationBodyItemInner()
-                .withTimestamp("0")
-                .withTerms(terms));
         client.reviews().addVideoTranscriptModerationResult("application/json", Samples.TeamName, review_id, body);
-        Thread.sleep(throttleRate);
     }
 
     /*
@@ -103,19 +88,19 @@ public class VideoTranscriptReviews {
         System.out.println(
                 String.format("Publishing the review with ID %s.", review_id));
         client.reviews().publishVideoReview(Samples.TeamName, review_id);
-        Thread.sleep(throttleRate);
     }
 
-    static void execute(ContentModeratorClientImpl client) throws InterruptedException {
+    static void execute(ContentModeratorClientImpl client) throws InterruptedException, ExecutionException {
             // Create a review with the content pointing to a streaming endpoint (manifest)
             String streamingcontent = "https://amssamples.streaming.mediaservices.windows.net/91492735-c523-432b-ba01-faba6c2206a2/AzureMediaServicesPromo.ism/manifest";
             String review_id = CreateReview(client, "review1", streamingcontent);
 
-            String transcript = "WEBVTT" + System.lineSeparator() +
+            // To moderate a transcript file, use WebVttTranscript.open, which maps the file into memory.
+            WebVttTranscript transcript = WebVttTranscript.wrap("WEBVTT" + System.lineSeparator() +
             "01:01.000 --> 02:02.000" + System.lineSeparator() +
             "First line with a crap word in a transcript." + System.lineSeparator() +
             "02:03.000 --> 02:25.000" + System.lineSeparator() +
-            "This is another line in the transcript." + System.lineSeparator();
+            "This is another line in the transcript." + System.lineSeparator());
 
             AddTranscript(client, review_id, transcript);
 
@@ -0,0 +1,347 @@
+/**
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License. See License.txt in the project root for
+ * license information.
+ */
+
+package com.microsoft.azure.contentmoderator.samples;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A WebVTT transcript, indexed by cue.
+ * The transcript is read once, from a memory-mapped file or a byte array,
+ * to record the timestamps of every cue and the position of its text in the
+ * bytes; no String is created while indexing. The text of a cue is only
+ * decoded when it is asked for, so a large transcript can be read by several
+ * stages, or queried by time range, without being parsed again.
+ */
+public class WebVttTranscript {
+    private static final byte[] Arrow = "-->".getBytes(StandardCharsets.US_ASCII);
+
+    private final ByteBuffer bytes;
+
+    /*
+     * For each cue: its start and end, in milliseconds, and the byte range of its text.
+     */
+    private long[] starts = new long[64];
+
+    private long[] ends = new long[64];
+
+    private int[] textStarts = new int[64];
+
+    private int[] textEnds = new int[64];
+
+    /*
+     * The latest end of the cues up to each cue, to find the cues that overlap a time range.
+     */
+    private long[] maxEnds;
+
+    private int size;
+
+    /**
+     * Indexes a transcript held in a buffer.
+     * @param bytes the UTF-8 bytes of the transcript, from the position to the limit of the buffer
+     */
+    public WebVttTranscript(ByteBuffer bytes) {
+        this.bytes = bytes.slice();
+        index();
+    }
+
+    /**
+     * Maps a transcript file into memory and indexes it.
+     * @param file the WebVTT file
+     * @return the transcript
+     * @throws IOException if the file cannot be read
+     */
+    public static WebVttTranscript open(File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = input.getChannel();
+            // The mapping stays valid after the channel is closed.
+            return new WebVttTranscript(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Indexes a transcript held in memory.
+     * @param webVtt the transcript
+     * @return the transcript
+     */
+    public static WebVttTranscript wrap(String webVtt) {
+        return new WebVttTranscript(ByteBuffer.wrap(webVtt.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @return the number of cues
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param cue the index of a cue
+     * @return the time, in milliseconds, at which the cue starts
+     */
+    public long start(int cue) {
+        check(cue);
+        return starts[cue];
+    }
+
+    /**
+     * @param cue the index of a cue
+     * @return the time, in milliseconds, at which the cue ends
+     */
+    public long end(int cue) {
+        check(cue);
+        return ends[cue];
+    }
+
+    /**
+     * Decodes the text of a cue; lines are separated by a line feed.
+     * @param cue the index of a cue
+     * @return the text
+     */
+    public String text(int cue) {
+        check(cue);
+        ByteBuffer text = bytes.duplicate();
+        text.limit(textEnds[cue]).position(textStarts[cue]);
+        String decoded = StandardCharsets.UTF_8.decode(text).toString();
+        return decoded.indexOf('\r') < 0 ? decoded : decoded.replace("\r\n", "\n").replace('\r', '\n');
+    }
+
+    /**
+     * @param cue the index of a cue
+     * @return the cue, with its text decoded
+     */
+    public TranscriptCue cue(int cue) {
+        return new TranscriptCue(start(cue), end(cue), text(cue));
+    }
+
+    /**
+     * @return all the cues, decoded as they are read
+     */
+    public List<TranscriptCue> cues() {
+        return range(0, size);
+    }
+
+    /**
+     * Finds the cues that are shown during a time range.
+     * @param from the start of the range, in milliseconds
+     * @param to the end of the range, in milliseconds, excluded
+     * @return the cues that start before the end of the range and end after its start,
+     *         decoded as they are read
+     */
+    public List<TranscriptCue> cues(long from, long to) {
+        // Cues start in order, so those starting before the end of the range are a prefix.
+        int last = upperBound(starts, to - 1);
+        // The latest end so far only grows, so those that may end after the start of the range are a suffix.
+        int first = upperBound(maxEnds, from);
+        int count = 0;
+        int[] found = new int[Math.max(0, last - first)];
+        for (int cue = first; cue < last; cue++) {
+            if (ends[cue] > from) {
+                found[count++] = cue;
+            }
+        }
+        return view(found, count);
+    }
+
+    /**
+     * @return a copy of the bytes of the transcript, to upload it
+     */
+    public byte[] toByteArray() {
+        byte[] copy = new byte[bytes.limit()];
+        ByteBuffer source = bytes.duplicate();
+        source.position(0);
+        source.get(copy);
+        return copy;
+    }
+
+    private List<TranscriptCue> range(final int first, final int last) {
+        return new AbstractList<TranscriptCue>() {
+            @Override
+            public TranscriptCue get(int index) {
+                if (index < 0 || index >= last - first) {
+                    throw new IndexOutOfBoundsException(String.valueOf(index));
+                }
+                return cue(first + index);
+            }
+
+            @Override
+            public int size() {
+                return last - first;
+            }
+        };
+    }
+
+    private List<TranscriptCue> view(final int[] found, final int count) {
+        return new AbstractList<TranscriptCue>() {
+            @Override
+            public TranscriptCue get(int index) {
+                if (index < 0 || index >= count) {
+                    throw new IndexOutOfBoundsException(String.valueOf(index));
+                }
+                return cue(found[index]);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    /*
+     * Returns the number of leading values, of the first size values, that are at most a limit.
+     */
+    private int upperBound(long[] values, long limit) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] <= limit) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void check(int cue) {
+        if (cue < 0 || cue >= size) {
+            throw new IndexOutOfBoundsException(String.valueOf(cue));
+        }
+    }
+
+    /*
+     * Scans the lines of the transcript, recording every cue.
+     */
+    private void index() {
+        int limit = bytes.limit();
+        int position = 0;
+        // Skip the byte order mark.
+        if (limit >= 3 && (bytes.get(0) & 0xFF) == 0xEF && (bytes.get(1) & 0xFF) == 0xBB
+                && (bytes.get(2) & 0xFF) == 0xBF) {
+            position = 3;
+        }
+        boolean inCue = false;
+        while (position < limit) {
+            int lineStart = position;
+            int lineEnd = lineStart;
+            while (lineEnd < limit && bytes.get(lineEnd) != '\n' && bytes.get(lineEnd) != '\r') {
+                lineEnd++;
+            }
+            position = lineEnd;
+            if (position < limit && bytes.get(position) == '\r') {
+                position++;
+            }
+            if (position < limit && bytes.get(position) == '\n') {
+                position++;
+            }
+
+            int arrow = find(Arrow, lineStart, lineEnd);
+            if (arrow >= 0) {
+                add(timestamp(lineStart, arrow), timestamp(arrow + Arrow.length, lineEnd), position);
+                inCue = true;
+            } else if (isBlank(lineStart, lineEnd)) {
+                // A blank line ends the cue; what follows up to the next timing line is not cue text.
+                inCue = false;
+            } else if (inCue) {
+                textEnds[size - 1] = lineEnd;
+            }
+        }
+
+        maxEnds = new long[size];
+        long maxEnd = Long.MIN_VALUE;
+        for (int cue = 0; cue < size; cue++) {
+            maxEnd = Math.max(maxEnd, ends[cue]);
+            maxEnds[cue] = maxEnd;
+        }
+    }
+
+    private void add(long start, long end, int textStart) {
+        if (size == starts.length) {
+            int capacity = size * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            textStarts = Arrays.copyOf(textStarts, capacity);
+            textEnds = Arrays.copyOf(textEnds, capacity);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        textStarts[size] = textStart;
+        textEnds[size] = textStart;
+        size++;
+    }
+
+    /*
+     * Parses the first timestamp, "mm:ss.ttt" or "hh:mm:ss.ttt", found in a byte range.
+     * Leading spaces are skipped, and the timestamp ends at the next space.
+     */
+    private long timestamp(int from, int to) {
+        int position = from;
+        while (position < to && isSpace(bytes.get(position))) {
+            position++;
+        }
+        long seconds = 0;
+        long field = 0;
+        long milliseconds = 0;
+        int fractionDigits = -1;
+        for (; position < to && !isSpace(bytes.get(position)); position++) {
+            byte c = bytes.get(position);
+            if (c >= '0' && c <= '9') {
+                if (fractionDigits < 0) {
+                    field = field * 10 + (c - '0');
+                } else if (fractionDigits++ < 3) {
+                    milliseconds = milliseconds * 10 + (c - '0');
+                }
+            } else if (c == ':' && fractionDigits < 0) {
+                seconds = (seconds + field) * 60;
+                field = 0;
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                throw new IllegalArgumentException("Invalid WebVTT timestamp at byte " + position + ".");
+            }
+        }
+        for (int digits = Math.max(0, fractionDigits); digits < 3; digits++) {
+            milliseconds *= 10;
+        }
+        return (seconds + field) * 1000 + milliseconds;
+    }
+
+    private int find(byte[] pattern, int from, int to) {
+        for (int i = from; i <= to - pattern.length; i++) {
+            int j = 0;
+            while (j < pattern.length && bytes.get(i + j) == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isBlank(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!isSpace(bytes.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t';
+    }
+}
@@ -2,9 +2,11 @@ import com.microsoft.azure.cognitiveservices.vision.computervision.*;
 import com.microsoft.azure.cognitiveservices.vision.computervision.models.*;
 
 import java.io.File;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * Computer Vision Quickstart - Java
@@ -22,6 +24,7 @@ import java.util.List;
  * 
  * This quickstart performs the following tasks with both local and URL images:
  *   - Authenticate: creates a single client for use with all examples.
+ *   - Analyze Image: requests all the features below with one call per image (see ImageAnalyzer).
  *   - Describe Image: gives a description of the main features of an image.
  *   - Categorize Image: returns a few general categories related to the image.
  *   - Tag Image: returns keywords from all objects in the image.
@@ -30,7 +33,8 @@ import java.util.List;
  *   - Detect Color Scheme: retuns dominant colors and accent color in the image.
  *   - Detect Domain-Specific Content: identifies celebrities or landmarks in an image.
  *   - Detect Image Type: returns the file type (clip art, line drawing, etc.) of an image.
- *   - Recongnize Printed Text: uses optical character recognition (OCR) to find text in an image.
+ *   - Recongnize Printed Text: uses optical character recognition (OCR) to find text in an image,
+ *     and indexes the words found to search them locally (see OcrIndex).
  * 
  * NOTE: Ignore the "Warning..." text in the console when run. The sample still runs fine despite it.
  */
@@ -41,8 +45,8 @@ class ComputerVisionQuickstart {
     // Images for use in several examples. Get from here: 
     // https://github.com/Azure-Samples/cognitive-services-sample-data-files/tree/master/ComputerVision/Images
     // Create a resources folder as in src/main/resources, then add the images below to it.
-    String localImagePath = "src\\main\\resources\\landmark.jpg";
-    String localTextImagePath = "src\\main\\resources\\printed_text.jpg";
+    String localImagePath = "src/main/resources/landmark.jpg";
+    String localTextImagePath = "src/main/resources/printed_text.jpg";
     String remoteImageURL = "https://github.com/Azure-Samples/cognitive-services-sample-data-files/raw/master/ComputerVision/Images/faces.jpg";
     // Use a remote image for recognizing text with OCR
     String remoteTextImageURL = "https://moderatorsampleimages.blob.core.windows.net/samples/sample2.jpg";
@@ -71,366 +75,209 @@ class ComputerVisionQuickstart {
      * END - Authenticate
      */
 
-    // Analyze local and remote images
-    DescribeImage(computerVisionClient, localImagePath, remoteImageURL);
-    CategorizeImage(computerVisionClient, localImagePath, remoteImageURL);
-    TagImage(computerVisionClient, localImagePath, remoteImageURL);
-    DetectFacesInImage(computerVisionClient, localImagePath, remoteImageURL);
-    DetectAdultOrRacyContentInImage(computerVisionClient, localImagePath, remoteImageURL);
-    DetectColorSchemeInImage(computerVisionClient, localImagePath, remoteImageURL);
-    DetectDomainSpecificContentInImage(computerVisionClient, localImagePath, remoteImageURL);
-    DetectImageTypesInImage(computerVisionClient, localImagePath, remoteImageURL);
+    // Local images are streamed from their files, through the HTTP client of the SDK,
+    // instead of being read into a byte array for every call.
+    StreamingImageUploader uploader = new StreamingImageUploader(computerVisionClient, subscriptionKey);
+
+    // Large local images are shrunk, on all cores, before they are uploaded: the results
+    // don't need full resolution. The shrunk images are kept in the 'resized' folder.
+    ImagePreprocessor preprocessor =
+            new ImagePreprocessor(new File("resized"), 1600, 0.85f, Runtime.getRuntime().availableProcessors());
+
+    // Analyze a directory tree of images, or a manifest of image paths and URLs,
+    // when one is given on the command line: mvn compile exec:java -Dexec.args="<directory or manifest> [output]"
+    if (args.length > 0) {
+      AnalyzeImagesInBatch(computerVisionClient, uploader, preprocessor, args[0], args.length > 1 ? args[1] : "analysis.ndjson");
+      return;
+    }
+
+    // Analyze local and remote images. Every feature is requested with a single
+    // call per image, and the analysis is handed to each of the examples below.
+    ImageAnalyzer analyzer = new ImageAnalyzer(computerVisionClient)
+        .withUploader(uploader)
+        .withPreprocessor(preprocessor)
+        .on(DescribeImage, VisualFeatureTypes.DESCRIPTION)
+        .on(CategorizeImage, VisualFeatureTypes.CATEGORIES)
+        .on(TagImage, VisualFeatureTypes.TAGS)
+        .on(DetectFacesInImage, VisualFeatureTypes.FACES)
+        .on(DetectAdultOrRacyContentInImage, VisualFeatureTypes.ADULT)
+        .on(DetectColorSchemeInImage, VisualFeatureTypes.COLOR)
+        .on(DetectDomainSpecificContentInImage, VisualFeatureTypes.DESCRIPTION, VisualFeatureTypes.CATEGORIES)
+        .on(DetectImageTypesInImage, VisualFeatureTypes.IMAGE_TYPE);
+    try {
+      System.out.println("-----------------------------------------------");
+      System.out.println("ANALYZE LOCAL IMAGE");
+      analyzer.analyze(new File(localImagePath));
+    } catch (Exception e) {
+        System.out.println(e.getMessage());
+        e.printStackTrace();
+    }
+    try {
+      System.out.println("-----------------------------------------------");
+      System.out.println("ANALYZE REMOTE IMAGE");
+      analyzer.analyze(remoteImageURL);
+    } catch (Exception e) {
+        System.out.println(e.getMessage());
+        e.printStackTrace();
+    }
 
     // Analyze local and remote text-image for recognizing printed text with OCR
-    RecognizeTextOCR(computerVisionClient, localTextImagePath, remoteTextImageURL);
+    RecognizeTextOCR(computerVisionClient, uploader, preprocessor, localTextImagePath, remoteTextImageURL);
   }
 
   /**
    *  DESCRIBE IMAGE: 
-   *  API call: AnalyzeImageInStream & DescribeImage
+   *  Visual feature: Description
    *  Displays the image description (captions) and their confidence values.
    */
-  public static void DescribeImage(ComputerVisionClient client, String localImagePath, String remoteImageURL) {
-    System.out.println("-----------------------------------------------");
-    System.out.println("DESCRIBE IMAGE");
-    System.out.println();
-    try {
-      // Describe local image
-      File localImage = new File(localImagePath);
-      byte[] imgBytes = Files.readAllBytes(localImage.toPath());
-      ImageDescription analysisLocal = client.computerVision().describeImageInStream()
-          .withImage(imgBytes)
-          .withLanguage("en")
-          .withMaxCandidates("1")
-          .execute();
-      
-      // Describe remote URL image
-      ImageDescription analysisRemote = client.computerVision().describeImage()
-      .withUrl(remoteImageURL)
-      .withLanguage("en")
-      .withMaxCandidates("1")
-      .execute();
-
-      ImageDescription[] results = { analysisLocal, analysisRemote };
-
-      // Print results of local and remote images
-      for (ImageDescription result : results){
-        String location = null;
-        ImageDescription analysis = null;
-        if (result == analysisLocal) { analysis = analysisLocal; location = "local"; }
-        else { analysis = analysisRemote; location = "remote"; }
-
-        System.out.println("Description of " + location +" image: ");
-        if (analysis.captions().size() == 0) {
-          System.out.println("No description detected in " + location +" image.");
-        } else {
-          for (ImageCaption caption : analysis.captions()) {
-              System.out.printf("\'%s\' with confidence %2.2f%%\n", caption.text(), caption.confidence() * 100);
-          }
+  public static final ImageAnalyzer.FeatureConsumer DescribeImage = new ImageAnalyzer.FeatureConsumer() {
+    @Override
+    public void accept(String image, ImageAnalysis analysis) {
+      System.out.println();
+      System.out.println("DESCRIBE IMAGE");
+      System.out.println("Description of " + image + ": ");
+      if (analysis.description() == null || analysis.description().captions().size() == 0) {
+        System.out.println("No description detected in " + image + ".");
+      } else {
+        for (ImageCaption caption : analysis.description().captions()) {
+            System.out.printf("\'%s\' with confidence %2.2f%%\n", caption.text(), caption.confidence() * 100);
         }
-        System.out.println();
       }
-    } catch (Exception e) {
-        System.out.println(e.getMessage());
-        e.printStackTrace();
     }
-  }
+  };
   //  END - Describe Image
 
   /**  
    * CATEGORIZE IMAGE:
-   * API call: AnalyzeImageInStream & AnalyzeImage
+   * Visual feature: Categories
    * Displays image categories and their confidence values.
    */
-  public static void CategorizeImage(ComputerVisionClient client, String localImagePath, String remoteImageURL) {
-    System.out.println("-----------------------------------------------");   
-    System.out.println("CATEGORIZE IMAGE");
-    System.out.println();
-    try {
-      File localImage = new File(localImagePath);
-      byte[] imgBytes = Files.readAllBytes(localImage.toPath());
-
-      List<VisualFeatureTypes> features = new ArrayList<>();
-      features.add(VisualFeatureTypes.CATEGORIES);
-
-      // Categorize local image
-      ImageAnalysis analysisLocal = client.computerVision().analyzeImageInStream()
-          .withImage(imgBytes)
-          .withVisualFeatures(features)
-          .execute();
-      
-      // Categorize remote URL image 
-      ImageAnalysis analysisRemote = client.computerVision().analyzeImage()
-      .withUrl(remoteImageURL)
-      .withVisualFeatures(features)
-      .execute();
-
-      ImageAnalysis[] results = { analysisLocal, analysisRemote };
-
-      // Print results of local and remote images
-      for (ImageAnalysis result : results){
-        String location = null;
-        ImageAnalysis analysis = null;
-        if (result == analysisLocal) { analysis = analysisLocal; location = "local"; }
-        else { analysis = analysisRemote; location = "remote"; }
-
-        System.out.println("\nCategories from " + location + " image: ");
-        if (analysis.categories().size() == 0) {
-          System.out.println("No categories detected in " + location + " image.");
-        } else {
-          for (Category category : analysis.categories()) {
-              System.out.printf("\'%s\' with confidence %2.2f%%\n", category.name(), category.score() * 100);
-          }
+  public static final ImageAnalyzer.FeatureConsumer CategorizeImage = new ImageAnalyzer.FeatureConsumer() {
+    @Override
+    public void accept(String image, ImageAnalysis analysis) {
+      System.out.println();
+      System.out.println("CATEGORIZE IMAGE");
+      System.out.println("Categories from " + image + ": ");
+      if (analysis.categories() == null || analysis.categories().size() == 0) {
+        System.out.println("No categories detected in " + image + ".");
+      } else {
+        for (Category category : analysis.categories()) {
+            System.out.printf("\'%s\' with confidence %2.2f%%\n", category.name(), category.score() * 100);
         }
-      }  
-    } catch (Exception e) {
-        System.out.println(e.getMessage());
-        e.printStackTrace();
+      }
     }
-    System.out.println();
-  }
+  };
   //  END - Categorize Image
 
   /**  
    * TAG IMAGE:
-   * API call: TagImageInStream & TagImage
+   * Visual feature: Tags
    * Displays the image tags and their confidence values.
    */
-  public static void TagImage(ComputerVisionClient client, String localImagePath, String remoteImageURL) {
-    System.out.println("-----------------------------------------------");
-    System.out.println("TAG IMAGE");
-    System.out.println();
-    try {
-      File localImage = new File(localImagePath);
-      byte[] imgBytes = Files.readAllBytes(localImage.toPath());
-
-      // Get tags from local image
-      TagResult analysisLocal = client.computerVision().tagImageInStream()
-          .withImage(imgBytes)
-          .withLanguage("en")
-          .execute();
-      
-      // Get tags from remote URL image
-      TagResult analysisRemote = client.computerVision().tagImage()
-      .withUrl(remoteImageURL)
-      .withLanguage("en")
-      .execute();
-
-      TagResult[] results = { analysisLocal, analysisRemote };
-
-      // Print results of local and remote images
-      for (TagResult result : results){
-        String location = null;
-        TagResult analysis = null;
-        if (result == analysisLocal) { analysis = analysisLocal; location = "local"; }
-        else { analysis = analysisRemote; location = "remote"; }
-
-        System.out.println("Tags from " + location + " image: ");
-        if (analysis.tags().size() == 0) {
-          System.out.println("No tags detected in " + location + " image.");
-        } else {
-          for (ImageTag tag : analysis.tags()) {
-              System.out.printf("\'%s\' with confidence %2.2f%%\n", tag.name(), tag.confidence() * 100);
-          }
+  public static final ImageAnalyzer.FeatureConsumer TagImage = new ImageAnalyzer.FeatureConsumer() {
+    @Override
+    public void accept(String image, ImageAnalysis analysis) {
+      System.out.println();
+      System.out.println("TAG IMAGE");
+      System.out.println("Tags from " + image + ": ");
+      if (analysis.tags() == null || analysis.tags().size() == 0) {
+        System.out.println("No tags detected in " + image + ".");
+      } else {
+        for (ImageTag tag : analysis.tags()) {
+            System.out.printf("\'%s\' with confidence %2.2f%%\n", tag.name(), tag.confidence() * 100);
         }
-        System.out.println();
-      }  
-    } catch (Exception e) {
-        System.out.println(e.getMessage());
-        e.printStackTrace();
+      }
     }
-  }
+  };
   //  END - Tag Image
 
   /**  
    * DETECT FACES:
-   * API call: AnalyzeImageInStream & AnalyzeImage
+   * Visual feature: Faces
    * Displays gender, age, and bounding box from found faces in image.
    */
-  public static void DetectFacesInImage(ComputerVisionClient client, String localImagePath, String remoteImageURL){
-    System.out.println("-----------------------------------------------");
-    System.out.println("DETECT FACES IN IMAGE");
-    System.out.println();
-    try {
-      File localImage = new File(localImagePath);
-      byte[] imgBytes = Files.readAllBytes(localImage.toPath());
-
-      List<VisualFeatureTypes> features = new ArrayList<>();
-      features.add(VisualFeatureTypes.FACES);
-
-      // Detect faces in local image
-      ImageAnalysis analysisLocal = client.computerVision().analyzeImageInStream()
-          .withImage(imgBytes)
-          .withVisualFeatures(features)
-          .execute();
-
-      // Detect faces in remote URL image
-      ImageAnalysis analysisRemote = client.computerVision().analyzeImage()
-      .withUrl(remoteImageURL)
-      .withVisualFeatures(features)
-      .execute();
-
-      ImageAnalysis[] results = { analysisLocal, analysisRemote };
-
-      // Print results of local and remote images
-      for (ImageAnalysis result : results){
-        String location = null;
-        ImageAnalysis analysis = null;
-        if (result == analysisLocal) { analysis = analysisLocal; location = "local"; }
-        else { analysis = analysisRemote; location = "remote"; }
-
-        System.out.println("Faces from " + location + " image: ");
-        if (analysis.faces().size() == 0) {
-          System.out.println("No faces detected in " + location + " image.");
-        } else {
-          for (FaceDescription face : analysis.faces()) {
-              System.out.printf("\'%s\' of age %d at location (%d, %d), (%d, %d)\n", face.gender(), face.age(),
-                  face.faceRectangle().left(), face.faceRectangle().top(),
-                  face.faceRectangle().left() + face.faceRectangle().width(),
-                  face.faceRectangle().top() + face.faceRectangle().height());
-          }
+  public static final ImageAnalyzer.FeatureConsumer DetectFacesInImage = new ImageAnalyzer.FeatureConsumer() {
+    @Override
+    public void accept(String image, ImageAnalysis analysis) {
+      System.out.println();
+      System.out.println("DETECT FACES IN IMAGE");
+      System.out.println("Faces from " + image + ": ");
+      if (analysis.faces() == null || analysis.faces().size() == 0) {
+        System.out.println("No faces detected in " + image + ".");
+      } else {
+        for (FaceDescription face : analysis.faces()) {
+            System.out.printf("\'%s\' of age %d at location (%d, %d), (%d, %d)\n", face.gender(), face.age(),
+                face.faceRectangle().left(), face.faceRectangle().top(),
+                face.faceRectangle().left() + face.faceRectangle().width(),
+                face.faceRectangle().top() + face.faceRectangle().height());
         }
-        System.out.println();
       }
-    } catch (Exception e) {
-        System.out.println(e.getMessage());
-        e.printStackTrace();
     }
-  }
+  };
   //  END - Detect Faces
 
   /*  
    * DETECT ADULT/RACY CONTENT:
-   * API call: AnalyzeImageInStream & AnalyzeImage
+   * Visual feature: Adult
    * Displays whether or not image contain adult or racy features with confidence values.
    */
-  public static void DetectAdultOrRacyContentInImage(ComputerVisionClient client, String localImagePath, String remoteImageURL) {
-    System.out.println("-----------------------------------------------");
-    System.out.println("DETECT ADULT/RACY CONTENT IN IMAGE");
-    System.out.println();
-    try {
-      File localImage = new File(localImagePath);
-      byte[] imgBytes = Files.readAllBytes(localImage.toPath());
-
-      List<VisualFeatureTypes> features = new ArrayList<>();
-      features.add(VisualFeatureTypes.ADULT);
-
-      // Detect adult/racy content in a local image
-      ImageAnalysis analysisLocal = client.computerVision().analyzeImageInStream()
-          .withImage(imgBytes)
-          .withVisualFeatures(features)
-          .execute();
-
-      // Detect adult/racy content in a remote image
-      ImageAnalysis analysisRemote = client.computerVision().analyzeImage()
-          .withUrl(remoteImageURL)
-          .withVisualFeatures(features)
-          .execute();
-
-      ImageAnalysis[] results = { analysisLocal, analysisRemote };
-
-      // Print results of local and remote images
-      for (ImageAnalysis result : results){
-        String location = null;
-        ImageAnalysis analysis = null;
-        if (result == analysisLocal) { analysis = analysisLocal; location = "local"; }
-        else { analysis = analysisRemote; location = "remote"; }    
-
-        System.out.println("Adult or racy content in " + location + " image: ");
-        System.out.printf("Is adult content: %b with confidence %2.2f%%\n", analysis.adult().isAdultContent(), analysis.adult().adultScore() * 100);
-        System.out.printf("Has racy content: %b with confidence %2.2f%%\n", analysis.adult().isRacyContent(), analysis.adult().racyScore() * 100);
-        System.out.println();
+  public static final ImageAnalyzer.FeatureConsumer DetectAdultOrRacyContentInImage = new ImageAnalyzer.FeatureConsumer() {
+    @Override
+    public void accept(String image, ImageAnalysis analysis) {
+      System.out.println();
+      System.out.println("DETECT ADULT/RACY CONTENT IN IMAGE");
+      if (analysis.adult() == null) {
+        System.out.println("No adult or racy content detected in " + image + ".");
+        return;
       }
-    } catch (Exception e) {
-        System.out.println(e.getMessage());
-        e.printStackTrace();
+      System.out.println("Adult or racy content in " + image + ": ");
+      System.out.printf("Is adult content: %b with confidence %2.2f%%\n", analysis.adult().isAdultContent(), analysis.adult().adultScore() * 100);
+      System.out.printf("Has racy content: %b with confidence %2.2f%%\n", analysis.adult().isRacyContent(), analysis.adult().racyScore() * 100);
     }
-  }
+  };
   //  END - Detect Adult/Racy Content
 
   /**
    * DETECT COLOR SCHEME:
+   * Visual feature: Color
    * Displays dominant color scheme of image and accent color.
    */
-  public static void DetectColorSchemeInImage(ComputerVisionClient client, String localImagePath, String remoteImageURL) {
-    System.out.println("-----------------------------------------------");
-    System.out.println("DETECT COLOR SCHEME IN IMAGE");
-    System.out.println();
-    try {
-      File localImage = new File(localImagePath);
-      byte[] imgBytes = Files.readAllBytes(localImage.toPath());
-
-      List<VisualFeatureTypes> features = new ArrayList<>();
-      features.add(VisualFeatureTypes.COLOR);
-
-      // Detect color scheme in local image
-      ImageAnalysis analysisLocal = client.computerVision().analyzeImageInStream()
-          .withImage(imgBytes)
-          .withVisualFeatures(features)
-          .execute();
-
-      // Detect color scheme in remote URL image
-      ImageAnalysis analysisRemote = client.computerVision().analyzeImage()
-      .withUrl(remoteImageURL)
-      .withVisualFeatures(features)
-      .execute();
-
-      ImageAnalysis[] results = { analysisLocal, analysisRemote };
-
-      // Print results of local and remote images
-      for (ImageAnalysis result : results){
-        String location = null;
-        ImageAnalysis analysis = null;
-        if (result == analysisLocal) { analysis = analysisLocal; location = "local"; }
-        else { analysis = analysisRemote; location = "remote"; }   
-
-        System.out.println("Color scheme of the " + location + " image: ");
-        System.out.println("Is black and white: " + analysis.color().isBWImg());
-        System.out.println("Accent color: 0x" + analysis.color().accentColor());
-        System.out.println("Dominant background color: " + analysis.color().dominantColorBackground());
-        System.out.println("Dominant foreground color: " + analysis.color().dominantColorForeground());
-        System.out.println("Dominant colors: " + String.join(", ", analysis.color().dominantColors()));
-        System.out.println();
+  public static final ImageAnalyzer.FeatureConsumer DetectColorSchemeInImage = new ImageAnalyzer.FeatureConsumer() {
+    @Override
+    public void accept(String image, ImageAnalysis analysis) {
+      System.out.println();
+      System.out.println("DETECT COLOR SCHEME IN IMAGE");
+      if (analysis.color() == null) {
+        System.out.println("No color scheme detected in " + image + ".");
+        return;
       }
-    } catch (Exception e) {
-        System.out.println(e.getMessage());
-        e.printStackTrace();
+      System.out.println("Color scheme of " + image + ": ");
+      System.out.println("Is black and white: " + analysis.color().isBWImg());
+      System.out.println("Accent color: 0x" + analysis.color().accentColor());
+      System.out.println("Dominant background color: " + analysis.color().dominantColorBackground());
+      System.out.println("Dominant foreground color: " + analysis.color().dominantColorForeground());
+      System.out.println("Dominant colors: " + String.join(", ", analysis.color().dominantColors()));
     }
-  }
+  };
   //  END - Detect Color Scheme
 
   /** 
    * DETECT DOMAIN-SPECIFIC CONTENT:
+   * Visual features: Description and Categories
    * Displays detected celebrities and landmarks in images, in any, with confidence values.
    */
-  public static void DetectDomainSpecificContentInImage(ComputerVisionClient client, String localImagePath, String remoteImageURL) {
-    System.out.println("-----------------------------------------------");
-    System.out.println("DETECT DOMAIN-SPECIFIC CONTENT IN IMAGE");
-    System.out.println();
-    try {
-      File localImage = new File(localImagePath);
-      byte[] imgBytes = Files.readAllBytes(localImage.toPath());
-
-      List<VisualFeatureTypes> features = new ArrayList<>();
-      features.add(VisualFeatureTypes.DESCRIPTION);
-      features.add(VisualFeatureTypes.CATEGORIES);
-
-      // Detect domain specific content in a local image
-      ImageAnalysis analysisLocal = client.computerVision().analyzeImageInStream()
-          .withImage(imgBytes)
-          .withVisualFeatures(features)
-          .execute();
-
-      // Detect domain specific content in a remote URL image
-      ImageAnalysis analysisRemote = client.computerVision().analyzeImage()
-          .withUrl(remoteImageURL)
-          .withVisualFeatures(features)
-          .execute();
+  public static final ImageAnalyzer.FeatureConsumer DetectDomainSpecificContentInImage = new ImageAnalyzer.FeatureConsumer() {
+    @Override
+    public void accept(String image, ImageAnalysis analysis) {
+      System.out.println();
+      System.out.println("DETECT DOMAIN-SPECIFIC CONTENT IN IMAGE");
+      if (analysis.categories() == null) {
+        System.out.println("No categories detected in " + image + ".");
+        return;
+      }
 
-      // Print results of a local image
-      System.out.println("Landmarks in local image: ");
-      int num = 1;
-      for (Category category : analysisLocal.categories()) {
+      System.out.println("Landmarks in " + image + ": ");
+      for (Category category : analysis.categories()) {
         if (category.detail() != null && category.detail().landmarks() != null) {
           for (LandmarksModel landmark : category.detail().landmarks()) {
             System.out.println("In category: " + category.name());
@@ -439,9 +286,8 @@ class ComputerVisionQuickstart {
         } 
       }
 
-      // Print results of a remote image
-      System.out.println("\nCelebrities in remote image: ");
-      for (Category category : analysisRemote.categories()) {
+      System.out.println("Celebrities in " + image + ": ");
+      for (Category category : analysis.categories()) {
         if (category.detail() != null && category.detail().celebrities() != null) {
           for (CelebritiesModel celeb : category.detail().celebrities()) {
             // Location is the bounding box around the celebrity's face
@@ -452,98 +298,102 @@ class ComputerVisionQuickstart {
                   celeb.faceRectangle().left() + celeb.faceRectangle().width(),
                   celeb.faceRectangle().top() + celeb.faceRectangle().height());
           }
-        } else { System.out.println("No celebrities in remote image."); }
+        }
       }
-    } catch (Exception e) {
-        System.out.println(e.getMessage());
-        e.printStackTrace();
     }
-    System.out.println();
-  }
+  };
   //  END - Detect Domain-Specific Content
 
   /** 
    * DETECT IMAGE TYPE:
+   * Visual feature: ImageType
    * Displays type of image, whether or not it is clip art or a line drawing.
    */
-  public static void DetectImageTypesInImage(ComputerVisionClient client, String localImagePath, String remoteImageURL) {
+  public static final ImageAnalyzer.FeatureConsumer DetectImageTypesInImage = new ImageAnalyzer.FeatureConsumer() {
+    @Override
+    public void accept(String image, ImageAnalysis analysis) {
+      System.out.println();
+      System.out.println("DETECT TYPE OF IMAGE");
+      if (analysis.imageType() == null) {
+        System.out.println("No image type detected in " + image + ".");
+        return;
+      }
+      System.out.println("The type of " + image + " is: ");
+      System.out.println("Clip art type: ");
+      switch ((int) analysis.imageType().clipArtType()) {
+        case 0: System.out.println("Not clip art.");
+          break;
+        case 1: System.out.println("Ambiguously clip art.");
+          break;
+        case 2: System.out.println("Normal clip art.");
+          break;
+        case 3: System.out.println("Good clip art.");
+          break;
+        default:
+          break;
+      }
+      System.out.println("\nLine drawing type: ");
+      if (analysis.imageType().lineDrawingType() == 1) {
+        System.out.println("Image is a line drawing.");
+      } else {
+        System.out.println("Image isn't a line drawing.");
+      }
+    }
+  };
+  //  END - Detect Image Type
+
+  /**
+   * ANALYZE IMAGES IN BATCH:
+   * API call: AnalyzeImageInStream & AnalyzeImage
+   * Analyzes every image of a directory tree or manifest on all cores, and writes one line of JSON per image.
+   */
+  public static void AnalyzeImagesInBatch(ComputerVisionClient client, StreamingImageUploader uploader,
+                                          ImagePreprocessor preprocessor, String input, String outputPath) {
     System.out.println("-----------------------------------------------");
-    System.out.println("DETECT TYPE OF IMAGE");
+    System.out.println("ANALYZE IMAGES IN BATCH");
     System.out.println();
-    try {
-      File localImage = new File(localImagePath);
-      byte[] imgBytes = Files.readAllBytes(localImage.toPath());
-
-      List<VisualFeatureTypes> features = new ArrayList<>();
-      features.add(VisualFeatureTypes.IMAGE_TYPE);
-
-      // Detect type of local image
-      ImageAnalysis analysisLocal = client.computerVision().analyzeImageInStream()
-          .withImage(imgBytes)
-          .withVisualFeatures(features)
-          .execute();
-          
-      // Detect type of remote URL image
-      ImageAnalysis analysisRemote = client.computerVision().analyzeImage()
-          .withUrl(remoteImageURL)
-          .withVisualFeatures(features)
-          .execute();
-
-      ImageAnalysis[] results = { analysisLocal, analysisRemote };
-
-      // Print results of local and remote images
-      for (ImageAnalysis result : results){
-        String location = null;
-        ImageAnalysis analysis = null;
-        if (result == analysisLocal) { analysis = analysisLocal; location = "local"; }
-        else { analysis = analysisRemote; location = "remote"; } 
-
-        System.out.println("The " + location + " image type is: ");
-        System.out.println("Clip art type: ");
-        switch ((int) analysis.imageType().clipArtType()) {
-          case 0: System.out.println("Not clip art.");
-            break;
-          case 1: System.out.println("Ambiguously clip art.");
-            break;
-          case 2: System.out.println("Normal clip art.");
-            break;
-          case 3: System.out.println("Good clip art.");
-            break;
-          default:
-            break;
-        }
-        System.out.println("\nLine drawing type: ");
-        if (analysis.imageType().lineDrawingType() == 1) {
-          System.out.println("Image is a line drawing.");
-        } else {
-          System.out.println("Image isn't a line drawing.");
-        }
-        System.out.println();
-      }
+    ImageAnalyzer analyzer = new ImageAnalyzer(client)
+        .withUploader(uploader)
+        .withPreprocessor(preprocessor)
+        .on(new ImageAnalyzer.FeatureConsumer() {
+          @Override
+          public void accept(String image, ImageAnalysis analysis) {
+            // The analysis is written to the output; nothing else to do with it here.
+          }
+        }, VisualFeatureTypes.DESCRIPTION, VisualFeatureTypes.CATEGORIES, VisualFeatureTypes.TAGS);
+    // Requests mostly wait on the network, so use more threads than cores.
+    int threads = 4 * Runtime.getRuntime().availableProcessors();
+    try (ImageBatchRunner runner = new ImageBatchRunner(analyzer, threads, 2 * threads);
+         Writer output = Files.newBufferedWriter(Paths.get(outputPath), StandardCharsets.UTF_8)) {
+      Path path = Paths.get(input);
+      ImageBatchRunner.Result result = Files.isDirectory(path)
+          ? runner.runDirectory(path, output)
+          : runner.runManifest(path, output);
+      System.out.println("Analyzed " + result.Analyzed + " images, " + result.Failed + " failed. Results in " + outputPath);
     } catch (Exception e) {
         System.out.println(e.getMessage());
         e.printStackTrace();
     }
+    System.out.println();
   }
-  //  END - Detect Image Type
+  //  END - Analyze Images In Batch
 
   /** 
    * RECOGNIZE PRINTED TEXT:
    * Displays text found in image of printed text with angle and orientation of the block of text.
    */
-  private static void RecognizeTextOCR(ComputerVisionClient client, String localTextImagePath, String remoteTextImageURL){
+  private static void RecognizeTextOCR(ComputerVisionClient client, StreamingImageUploader uploader,
+                                       ImagePreprocessor preprocessor, String localTextImagePath,
+                                       String remoteTextImageURL){
     System.out.println("-----------------------------------------------");
     System.out.println("RECOGNIZE PRINTED TEXT");
     try {
-      File rawImage = new File(localTextImagePath);
-      byte[] localImageBytes = Files.readAllBytes(rawImage.toPath());
-
-      // Recognize printed text in local image
-      OcrResult ocrResultLocal = client.computerVision().recognizePrintedTextInStream()
-          .withDetectOrientation(true)
-          .withImage(localImageBytes)
-          .withLanguage(OcrLanguages.EN)
-          .execute();
+      // Recognize printed text in local image, shrunk and streamed from the file,
+      // with the bounding boxes mapped back to the original image
+      File localTextImage = new File(localTextImagePath);
+      File upload = preprocessor.prepare(localTextImage);
+      OcrResult ocrResultLocal = uploader.recognizePrintedText(upload, true, "en");
+      preprocessor.mapping(localTextImage, upload).apply(ocrResultLocal);
 
       // Recognize printed text in remote image
       OcrResult ocrResultRemote = client.computerVision().recognizePrintedText()
@@ -553,6 +403,7 @@ class ComputerVisionQuickstart {
           .execute();    
 
       OcrResult[] results = { ocrResultLocal , ocrResultRemote };
+      String searchWord = null;
 
       // Print results of local and remote images
       for (OcrResult result : results){
@@ -575,6 +426,7 @@ class ComputerVisionQuickstart {
               // get bounding box of first word recognized (just to demo)
               if (firstWord) {
                 System.out.println("\nFirst word in first line is \"" + word.text() + "\" with  bounding box: " + word.boundingBox());
+                if (searchWord == null) { searchWord = word.text(); }
                 firstWord = false;
                 System.out.println();
               }
@@ -584,6 +436,32 @@ class ComputerVisionQuickstart {
           }
         }
       }
+
+      // Index the recognized words, to search them later without calling the service again.
+      // The writer skips images already in the index, so a real index keeps its folder and
+      // only adds new images; the demo index goes to a new temporary folder, deleted on exit.
+      // The local image's bounding boxes are those of the original file, mapped above.
+      File indexDirectory = Files.createTempDirectory("ocr-index").toFile();
+      indexDirectory.deleteOnExit();
+      try (OcrIndexWriter writer = new OcrIndexWriter(indexDirectory, 1000000)) {
+        writer.add(localTextImagePath, ocrResultLocal);
+        writer.add(remoteTextImageURL, ocrResultRemote);
+      }
+      File[] segments = indexDirectory.listFiles();
+      if (segments != null) {
+        for (File segment : segments) {
+          segment.deleteOnExit();
+        }
+      }
+      if (searchWord != null) {
+        try (OcrIndex index = OcrIndex.open(indexDirectory)) {
+          System.out.println();
+          System.out.println("Searching the OCR index for \"" + searchWord + "\":");
+          for (OcrIndex.Posting posting : index.find(searchWord)) {
+            System.out.println(posting);
+          }
+        }
+      }
     } catch (Exception e) {
         System.out.println(e.getMessage());
         e.printStackTrace();
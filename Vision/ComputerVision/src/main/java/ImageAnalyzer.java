@@ -0,0 +1,159 @@
+import com.microsoft.azure.cognitiveservices.vision.computervision.*;
+import com.microsoft.azure.cognitiveservices.vision.computervision.models.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Analyzes images for several visual features with a single request per image.
+ *
+ * Consumers are registered for the features they need. Each image is read once,
+ * the features of all the consumers are merged into one AnalyzeImage request,
+ * and the analysis is handed to every consumer in the order they were registered.
+ * A consumer that throws is reported, and the others still get the analysis.
+ */
+class ImageAnalyzer {
+  /**
+   * Receives the analysis of an image.
+   */
+  interface FeatureConsumer {
+    /**
+     * @param image the path or URL of the image
+     * @param analysis the analysis, with at least the features the consumer was registered for
+     */
+    void accept(String image, ImageAnalysis analysis);
+  }
+
+  private final ComputerVisionClient client;
+
+  // The consumers, in registration order.
+  private final Set<FeatureConsumer> consumers = new LinkedHashSet<>();
+
+  private final List<VisualFeatureTypes> features = new ArrayList<>();
+
+  private String language = "en";
+
+  private StreamingImageUploader uploader;
+
+  private ImagePreprocessor preprocessor;
+
+  ImageAnalyzer(ComputerVisionClient client) {
+    this.client = client;
+  }
+
+  /**
+   * Registers a consumer for one or more features.
+   * @param consumer the consumer
+   * @param featureTypes the features the consumer reads from the analysis
+   * @return this analyzer
+   */
+  public ImageAnalyzer on(FeatureConsumer consumer, VisualFeatureTypes... featureTypes) {
+    consumers.add(consumer);
+    for (VisualFeatureTypes feature : featureTypes) {
+      if (!features.contains(feature)) {
+        features.add(feature);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Sets the language of the descriptions and tags, "en" by default.
+   * @param language the language code
+   * @return this analyzer
+   */
+  public ImageAnalyzer withLanguage(String language) {
+    this.language = language;
+    return this;
+  }
+
+  /**
+   * Streams local images from their files, instead of reading them into a byte array for the SDK.
+   * @param uploader the uploader
+   * @return this analyzer
+   */
+  public ImageAnalyzer withUploader(StreamingImageUploader uploader) {
+    this.uploader = uploader;
+    return this;
+  }
+
+  /**
+   * Shrinks large local images before they are uploaded. The face and celebrity rectangles
+   * of their analysis are mapped back to the original image.
+   * @param preprocessor the preprocessor
+   * @return this analyzer
+   */
+  public ImageAnalyzer withPreprocessor(ImagePreprocessor preprocessor) {
+    this.preprocessor = preprocessor;
+    return this;
+  }
+
+  /**
+   * @return the features requested for every image
+   */
+  public List<VisualFeatureTypes> features() {
+    return new ArrayList<>(features);
+  }
+
+  /**
+   * Reads a local image once and analyzes it for the features of all the consumers.
+   * @param localImage the image file
+   * @return the analysis
+   * @throws IOException if the image cannot be read
+   */
+  public ImageAnalysis analyze(File localImage) throws IOException {
+    File upload = preprocessor != null ? preprocessor.prepare(localImage) : localImage;
+    ImageAnalysis analysis;
+    if (uploader != null) {
+      analysis = uploader.analyze(upload, features, language);
+    } else {
+      byte[] imgBytes = Files.readAllBytes(upload.toPath());
+      analysis = client.computerVision().analyzeImageInStream()
+          .withImage(imgBytes)
+          .withVisualFeatures(features)
+          .withLanguage(language)
+          .execute();
+    }
+    if (upload != localImage) {
+      preprocessor.mapping(localImage, upload).apply(analysis);
+    }
+    dispatch(localImage.getPath(), analysis);
+    return analysis;
+  }
+
+  /**
+   * Analyzes a remote image for the features of all the consumers.
+   * @param remoteImageURL the URL of the image
+   * @return the analysis
+   */
+  public ImageAnalysis analyze(String remoteImageURL) {
+    ImageAnalysis analysis = client.computerVision().analyzeImage()
+        .withUrl(remoteImageURL)
+        .withVisualFeatures(features)
+        .withLanguage(language)
+        .execute();
+    dispatch(remoteImageURL, analysis);
+    return analysis;
+  }
+
+  /**
+   * Hands an analysis, received elsewhere, to every consumer.
+   * @param image the path or URL of the image
+   * @param analysis the analysis
+   */
+  public void dispatch(String image, ImageAnalysis analysis) {
+    for (FeatureConsumer consumer : consumers) {
+      try {
+        consumer.accept(image, analysis);
+      } catch (RuntimeException e) {
+        System.out.println(e.getMessage());
+        e.printStackTrace();
+      }
+    }
+  }
+}
@@ -0,0 +1,273 @@
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.microsoft.azure.cognitiveservices.vision.computervision.models.*;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Analyzes a directory tree, or a manifest of image paths and URLs, with a pool of threads.
+ *
+ * Images are read and analyzed on the worker threads, and the number of images in flight
+ * is bounded, so only that many images are in memory at a time however many are listed.
+ * Each result is written as one line of JSON as soon as it is received, so the output of
+ * a long run can be read while the run is going on. If a result cannot be written, no
+ * more images are started, and the run throws the error once the images in flight are done.
+ */
+class ImageBatchRunner implements Closeable {
+  /**
+   * The outcome of a run.
+   */
+  static class Result {
+    long Analyzed;
+    long Failed;
+  }
+
+  private static final String[] ImageExtensions = { ".jpg", ".jpeg", ".png", ".gif", ".bmp" };
+
+  private final ImageAnalyzer analyzer;
+
+  private final ExecutorService executor;
+
+  private final Semaphore inFlight;
+
+  private final int maxInFlight;
+
+  // Leaves out the features that were not requested.
+  private final ObjectMapper mapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+  // The results of the current run, and the first error writing them, guarded by this runner.
+  private Writer output;
+
+  private IOException writeError;
+
+  private final AtomicLong analyzed = new AtomicLong();
+
+  private final AtomicLong failed = new AtomicLong();
+
+  /**
+   * @param analyzer the analyzer, with the features to request; its consumers are called on the worker threads
+   * @param threads the number of images analyzed at the same time
+   * @param maxInFlight the maximum number of images read but not yet written
+   */
+  ImageBatchRunner(ImageAnalyzer analyzer, int threads, int maxInFlight) {
+    if (threads < 1 || maxInFlight < threads) {
+      throw new IllegalArgumentException("threads must be at least 1, and maxInFlight at least threads.");
+    }
+    this.analyzer = analyzer;
+    this.maxInFlight = maxInFlight;
+    this.inFlight = new Semaphore(maxInFlight);
+    final AtomicInteger count = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "image-batch-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Analyzes every image file under a directory.
+   * @param root the directory
+   * @param results receives one line of JSON per image
+   * @return the outcome
+   * @throws IOException if the directory cannot be read, or the results cannot be written
+   * @throws InterruptedException if the calling thread is interrupted
+   */
+  public Result runDirectory(Path root, Writer results) throws IOException, InterruptedException {
+    start(results);
+    try {
+      Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+          if (attributes.isRegularFile() && isImage(file.getFileName().toString())) {
+            submit(file.toString());
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+          write(file.toString(), null, e);
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (InterruptedIOException e) {
+      throw new InterruptedException(e.getMessage());
+    } finally {
+      drain();
+    }
+    return finish();
+  }
+
+  /**
+   * Analyzes the images of a manifest: one local path or http(s) URL per line.
+   * Empty lines and lines starting with # are skipped.
+   * @param manifest the manifest
+   * @param results receives one line of JSON per image
+   * @return the outcome
+   * @throws IOException if the manifest cannot be read, or the results cannot be written
+   * @throws InterruptedException if the calling thread is interrupted
+   */
+  public Result runManifest(Path manifest, Writer results) throws IOException, InterruptedException {
+    start(results);
+    try (BufferedReader lines = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = lines.readLine()) != null) {
+        line = line.trim();
+        if (!line.isEmpty() && !line.startsWith("#")) {
+          submit(line);
+        }
+      }
+    } catch (InterruptedIOException e) {
+      throw new InterruptedException(e.getMessage());
+    } finally {
+      drain();
+    }
+    return finish();
+  }
+
+  /**
+   * Stops the worker threads.
+   */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  private void start(Writer results) {
+    synchronized (this) {
+      if (output != null) {
+        throw new IllegalStateException("A run is already going on.");
+      }
+      output = results;
+      writeError = null;
+    }
+    analyzed.set(0);
+    failed.set(0);
+  }
+
+  /*
+   * Waits for the images in flight, even if the run failed, so that no worker writes to the
+   * writer once it is handed back. The results are flushed after every line, and the writer
+   * is left open for the caller.
+   */
+  private void drain() {
+    inFlight.acquireUninterruptibly(maxInFlight);
+    inFlight.release(maxInFlight);
+    synchronized (this) {
+      output = null;
+    }
+  }
+
+  /*
+   * Returns the outcome of a drained run, or throws the first error writing its results.
+   */
+  private Result finish() throws IOException {
+    IOException error;
+    synchronized (this) {
+      error = writeError;
+      writeError = null;
+    }
+    if (error != null) {
+      throw error;
+    }
+    Result result = new Result();
+    result.Analyzed = analyzed.get();
+    result.Failed = failed.get();
+    return result;
+  }
+
+  /*
+   * Starts analyzing an image once there is room for it, unless a result could not be written.
+   */
+  private void submit(final String image) throws IOException {
+    synchronized (this) {
+      if (writeError != null) {
+        throw writeError;
+      }
+    }
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to analyze " + image);
+    }
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          ImageAnalysis analysis = isUrl(image) ? analyzer.analyze(image) : analyzer.analyze(new File(image));
+          write(image, analysis, null);
+        } catch (Exception e) {
+          write(image, null, e);
+        } finally {
+          inFlight.release();
+        }
+      }
+    });
+  }
+
+  private void write(String image, ImageAnalysis analysis, Exception error) {
+    ObjectNode line = mapper.createObjectNode();
+    line.put("image", image);
+    if (error == null) {
+      line.set("analysis", mapper.valueToTree(analysis));
+    } else {
+      line.put("error", String.valueOf(error.getMessage()));
+    }
+    synchronized (this) {
+      if (writeError != null) {
+        return;
+      }
+      try {
+        output.write(mapper.writeValueAsString(line));
+        output.write('\n');
+        output.flush();
+      } catch (IOException e) {
+        writeError = new IOException("Could not write the result of " + image + ": " + e.getMessage(), e);
+        return;
+      }
+    }
+    if (error == null) {
+      analyzed.incrementAndGet();
+    } else {
+      failed.incrementAndGet();
+    }
+  }
+
+  private static boolean isUrl(String image) {
+    String lower = image.toLowerCase(Locale.ROOT);
+    return lower.startsWith("http://") || lower.startsWith("https://");
+  }
+
+  private static boolean isImage(String name) {
+    String lower = name.toLowerCase(Locale.ROOT);
+    for (String extension : ImageExtensions) {
+      if (lower.endsWith(extension)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
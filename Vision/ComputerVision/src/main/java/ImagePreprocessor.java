@@ -0,0 +1,500 @@
+import com.microsoft.azure.cognitiveservices.vision.computervision.models.*;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shrinks images before they are uploaded to the Computer Vision API.
+ *
+ * Each image larger than the maximum dimension is decoded at a reduced resolution, scaled to
+ * fit, turned upright according to its EXIF orientation, and re-encoded as a JPEG of the given
+ * quality, on a pool of threads sized for the CPU. The output is kept in a cache directory,
+ * keyed by the path, size and modification time of the image and by the settings, so an image
+ * is only shrunk once. Images that are already small enough, or that ImageIO has no reader for or
+ * fails to decode, are uploaded as they are.
+ *
+ * The service reports rectangles, such as faces and OCR bounding boxes, in the pixels of the image
+ * it received. {@link #mapping(File, File)} maps them back to the pixels of the original file.
+ */
+class ImagePreprocessor implements Closeable {
+  /**
+   * Maps the coordinates reported for a shrunk image back to the original image file, in its
+   * pixels as stored: scaled up, and turned back from upright to the EXIF orientation of the file.
+   */
+  static class CoordinateMapping {
+    private final int orientation;
+
+    // The size of the original image, as stored.
+    private final int width;
+    private final int height;
+
+    // The pixels of the upright original per pixel of the uploaded image.
+    private final double scaleX;
+    private final double scaleY;
+
+    CoordinateMapping(int orientation, int width, int height, double scaleX, double scaleY) {
+      this.orientation = orientation;
+      this.width = width;
+      this.height = height;
+      this.scaleX = scaleX;
+      this.scaleY = scaleY;
+    }
+
+    /**
+     * Maps a rectangle in place.
+     * @param box the left, top, width and height of the rectangle in the uploaded image
+     */
+    public void toOriginal(int[] box) {
+      double[] a = unrotate(box[0] * scaleX, box[1] * scaleY);
+      double[] b = unrotate((box[0] + box[2]) * scaleX, (box[1] + box[3]) * scaleY);
+      box[0] = (int) Math.round(Math.min(a[0], b[0]));
+      box[1] = (int) Math.round(Math.min(a[1], b[1]));
+      box[2] = (int) Math.round(Math.abs(a[0] - b[0]));
+      box[3] = (int) Math.round(Math.abs(a[1] - b[1]));
+    }
+
+    /**
+     * Maps the face and celebrity rectangles and the size of an analysis, in place.
+     * @param analysis the analysis of the uploaded image
+     */
+    public void apply(ImageAnalysis analysis) {
+      if (analysis.faces() != null) {
+        for (FaceDescription face : analysis.faces()) {
+          apply(face.faceRectangle());
+        }
+      }
+      if (analysis.categories() != null) {
+        for (Category category : analysis.categories()) {
+          if (category.detail() != null && category.detail().celebrities() != null) {
+            for (CelebritiesModel celebrity : category.detail().celebrities()) {
+              apply(celebrity.faceRectangle());
+            }
+          }
+        }
+      }
+      if (analysis.metadata() != null) {
+        analysis.metadata().withWidth(width).withHeight(height);
+      }
+    }
+
+    /**
+     * Maps the bounding boxes of the regions, lines and words of an OCR result, in place.
+     * @param result the OCR result of the uploaded image
+     */
+    public void apply(OcrResult result) {
+      if (result.regions() == null) {
+        return;
+      }
+      for (OcrRegion region : result.regions()) {
+        region.withBoundingBox(apply(region.boundingBox()));
+        List<OcrLine> lines = region.lines();
+        if (lines == null) {
+          continue;
+        }
+        for (OcrLine line : lines) {
+          line.withBoundingBox(apply(line.boundingBox()));
+          if (line.words() != null) {
+            for (OcrWord word : line.words()) {
+              word.withBoundingBox(apply(word.boundingBox()));
+            }
+          }
+        }
+      }
+    }
+
+    private void apply(FaceRectangle rectangle) {
+      if (rectangle == null) {
+        return;
+      }
+      int[] box = { rectangle.left(), rectangle.top(), rectangle.width(), rectangle.height() };
+      toOriginal(box);
+      rectangle.withLeft(box[0]).withTop(box[1]).withWidth(box[2]).withHeight(box[3]);
+    }
+
+    /*
+     * Maps a bounding box "left,top,width,height"; anything else is returned as it is.
+     */
+    private String apply(String boundingBox) {
+      if (boundingBox == null) {
+        return null;
+      }
+      String[] fields = boundingBox.split(",");
+      if (fields.length != 4) {
+        return boundingBox;
+      }
+      int[] box = new int[4];
+      try {
+        for (int i = 0; i < 4; i++) {
+          box[i] = Integer.parseInt(fields[i].trim());
+        }
+      } catch (NumberFormatException e) {
+        return boundingBox;
+      }
+      toOriginal(box);
+      return box[0] + "," + box[1] + "," + box[2] + "," + box[3];
+    }
+
+    /*
+     * Maps a point of the upright image to the image as stored, the inverse of scale().
+     */
+    private double[] unrotate(double u, double v) {
+      switch (orientation) {
+        case 2: return new double[] { width - u, v };
+        case 3: return new double[] { width - u, height - v };
+        case 4: return new double[] { u, height - v };
+        case 5: return new double[] { v, u };
+        case 6: return new double[] { v, height - u };
+        case 7: return new double[] { width - v, height - u };
+        case 8: return new double[] { width - v, u };
+        default: return new double[] { u, v };
+      }
+    }
+  }
+
+  private final File cacheDirectory;
+
+  private final int maxDimension;
+
+  private final float jpegQuality;
+
+  private final ExecutorService executor;
+
+  // The images being shrunk, by cache key, so that an image requested twice is only shrunk once.
+  private final ConcurrentHashMap<String, Future<File>> pending = new ConcurrentHashMap<>();
+
+  /**
+   * @param cacheDirectory the directory of the shrunk images; it may be deleted when no run is going on
+   * @param maxDimension the maximum width and height of the uploaded images, in pixels
+   * @param jpegQuality the quality of the re-encoded images, from 0 to 1
+   * @param threads the number of images decoded at the same time
+   */
+  ImagePreprocessor(File cacheDirectory, int maxDimension, float jpegQuality, int threads) {
+    if (maxDimension < 50 || jpegQuality <= 0 || jpegQuality > 1 || threads < 1) {
+      throw new IllegalArgumentException("maxDimension must be at least 50, jpegQuality in (0, 1] and threads at least 1.");
+    }
+    this.cacheDirectory = cacheDirectory;
+    this.maxDimension = maxDimension;
+    this.jpegQuality = jpegQuality;
+    final AtomicInteger count = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "image-preprocessor-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Shrinks an image on the pool, and waits for it.
+   * @param image the image file
+   * @return the file to upload: the shrunk image, or the image itself if it does not need shrinking
+   * @throws IOException if the shrunk image cannot be written
+   */
+  public File prepare(File image) throws IOException {
+    try {
+      return submit(image).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while preparing " + image);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Could not prepare " + image, e.getCause());
+    }
+  }
+
+  /**
+   * Starts shrinking an image on the pool.
+   * @param image the image file
+   * @return the file to upload, once it is ready
+   */
+  public Future<File> submit(final File image) {
+    final String key = cacheKey(image);
+    final File cached = new File(cacheDirectory, key + ".jpg");
+    if (cached.isFile()) {
+      return CompletableFuture.completedFuture(cached);
+    }
+    FutureTask<File> task = new FutureTask<>(new Callable<File>() {
+      @Override
+      public File call() throws IOException {
+        try {
+          return shrink(image, cached);
+        } finally {
+          pending.remove(key);
+        }
+      }
+    });
+    Future<File> existing = pending.putIfAbsent(key, task);
+    if (existing != null) {
+      return existing;
+    }
+    executor.execute(task);
+    return task;
+  }
+
+  /**
+   * Returns the mapping of the coordinates reported for an uploaded image back to the original.
+   * The sizes are read from the headers of the two files, so this also works for cached images.
+   * @param image the original image file
+   * @param upload the file that was uploaded, as returned by {@link #prepare(File)}
+   * @return the mapping, which changes nothing if the image was uploaded as it is
+   * @throws IOException if the files cannot be read
+   */
+  public CoordinateMapping mapping(File image, File upload) throws IOException {
+    if (upload.equals(image)) {
+      return new CoordinateMapping(1, 0, 0, 1, 1);
+    }
+    int orientation = exifOrientation(image);
+    int[] original = dimensions(image);
+    int[] uploaded = dimensions(upload);
+    if (original == null || uploaded == null) {
+      throw new IOException("Could not read the size of " + image + " or " + upload);
+    }
+    boolean swap = orientation >= 5 && orientation <= 8;
+    int uprightWidth = swap ? original[1] : original[0];
+    int uprightHeight = swap ? original[0] : original[1];
+    return new CoordinateMapping(orientation, original[0], original[1],
+        (double) uprightWidth / uploaded[0], (double) uprightHeight / uploaded[1]);
+  }
+
+  /**
+   * Stops the threads of the preprocessor.
+   */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  /*
+   * Decodes, scales, rotates and re-encodes an image into the cache.
+   */
+  private File shrink(File image, File cached) throws IOException {
+    int orientation = exifOrientation(image);
+    BufferedImage decoded;
+    try (ImageInputStream input = ImageIO.createImageInputStream(image)) {
+      Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+      if (readers == null || !readers.hasNext()) {
+        // Not a format ImageIO reads, such as HEIC; let the service decode it.
+        return image;
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(input, true, true);
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        if (Math.max(width, height) <= maxDimension && orientation <= 1
+            && "jpeg".equalsIgnoreCase(reader.getFormatName())) {
+          return image;
+        }
+        // Decode every nth pixel only, as long as the image stays larger than the target.
+        ImageReadParam param = reader.getDefaultReadParam();
+        int subsampling = Math.max(1, Math.max(width, height) / maxDimension);
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        decoded = reader.read(0, param);
+      } catch (IOException | RuntimeException e) {
+        // A reader that fails to decode the image, such as on a CMYK or truncated JPEG;
+        // let the service decode it.
+        return image;
+      } finally {
+        reader.dispose();
+      }
+    }
+
+    BufferedImage scaled = scale(decoded, orientation);
+    Files.createDirectories(cacheDirectory.toPath());
+    File temporary = File.createTempFile("resize", ".tmp", cacheDirectory);
+    try {
+      writeJpeg(scaled, temporary);
+      Files.move(temporary.toPath(), cached.toPath(),
+          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary.toPath());
+    }
+    return cached;
+  }
+
+  /*
+   * Scales an image to fit the maximum dimension and turns it upright, on an opaque background.
+   */
+  private BufferedImage scale(BufferedImage image, int orientation) {
+    double factor = Math.min(1.0, (double) maxDimension / Math.max(image.getWidth(), image.getHeight()));
+    int width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+    int height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+    boolean swap = orientation >= 5 && orientation <= 8;
+
+    // Maps the scaled image into the upright one.
+    AffineTransform transform = new AffineTransform();
+    switch (orientation) {
+      case 2: transform.translate(width, 0); transform.scale(-1, 1); break;
+      case 3: transform.translate(width, height); transform.rotate(Math.PI); break;
+      case 4: transform.translate(0, height); transform.scale(1, -1); break;
+      case 5: transform.rotate(Math.PI / 2); transform.scale(1, -1); break;
+      case 6: transform.translate(height, 0); transform.rotate(Math.PI / 2); break;
+      case 7: transform.translate(height, width); transform.rotate(Math.PI / 2); transform.scale(-1, 1); break;
+      case 8: transform.translate(0, width); transform.rotate(-Math.PI / 2); break;
+      default: break;
+    }
+    transform.scale(factor, factor);
+
+    BufferedImage output = new BufferedImage(swap ? height : width, swap ? width : height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = output.createGraphics();
+    try {
+      graphics.setColor(Color.WHITE);
+      graphics.fillRect(0, 0, output.getWidth(), output.getHeight());
+      graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      graphics.drawImage(image, transform, null);
+    } finally {
+      graphics.dispose();
+    }
+    return output;
+  }
+
+  /*
+   * Reads the width and height of an image from its header, or returns null if ImageIO cannot read it.
+   */
+  private static int[] dimensions(File image) throws IOException {
+    try (ImageInputStream input = ImageIO.createImageInputStream(image)) {
+      Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+      if (readers == null || !readers.hasNext()) {
+        return null;
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(input, true, true);
+        return new int[] { reader.getWidth(0), reader.getHeight(0) };
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  private void writeJpeg(BufferedImage image, File file) throws IOException {
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    try (ImageOutputStream output = ImageIO.createImageOutputStream(file)) {
+      writer.setOutput(output);
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(jpegQuality);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+  }
+
+  private String cacheKey(File image) {
+    String identity = image.getAbsolutePath() + '|' + image.length() + '|' + image.lastModified()
+        + '|' + maxDimension + '|' + jpegQuality;
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      StringBuilder key = new StringBuilder();
+      for (byte b : digest.digest(identity.getBytes(StandardCharsets.UTF_8))) {
+        key.append(String.format(Locale.ROOT, "%02x", b));
+      }
+      return key.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Reads the EXIF orientation of a JPEG file.
+   * @param image the image file
+   * @return the orientation, from 1 (upright) to 8, or 0 if the file has none
+   */
+  static int exifOrientation(File image) {
+    try (DataInputStream input = new DataInputStream(new FileInputStream(image))) {
+      if (input.readUnsignedShort() != 0xFFD8) {
+        return 0;
+      }
+      while (true) {
+        int marker = input.readUnsignedShort();
+        int length = input.readUnsignedShort() - 2;
+        if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || length < 0) {
+          // Not a marker, or the start of the image data: no EXIF segment.
+          return 0;
+        }
+        byte[] segment = new byte[length];
+        input.readFully(segment);
+        if (marker == 0xFFE1 && length > 14 && new String(segment, 0, 4, StandardCharsets.US_ASCII).equals("Exif")) {
+          return tiffOrientation(segment, 6);
+        }
+      }
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  /*
+   * Finds the orientation tag in the first directory of a TIFF header.
+   */
+  private static int tiffOrientation(byte[] b, int tiff) {
+    boolean little = b[tiff] == 'I';
+    int directory = tiff + readInt(b, tiff + 4, little);
+    if (directory < tiff || directory + 2 > b.length) {
+      return 0;
+    }
+    int entries = readShort(b, directory, little);
+    for (int i = 0; i < entries; i++) {
+      int entry = directory + 2 + 12 * i;
+      if (entry + 12 > b.length) {
+        return 0;
+      }
+      if (readShort(b, entry, little) == 0x0112) {
+        int orientation = readShort(b, entry + 8, little);
+        return orientation >= 1 && orientation <= 8 ? orientation : 0;
+      }
+    }
+    return 0;
+  }
+
+  private static int readShort(byte[] b, int offset, boolean little) {
+    return little
+        ? (b[offset] & 0xFF) | (b[offset + 1] & 0xFF) << 8
+        : (b[offset] & 0xFF) << 8 | (b[offset + 1] & 0xFF);
+  }
+
+  private static int readInt(byte[] b, int offset, boolean little) {
+    return little
+        ? readShort(b, offset, true) | readShort(b, offset + 2, true) << 16
+        : readShort(b, offset, false) << 16 | readShort(b, offset + 2, false);
+  }
+}
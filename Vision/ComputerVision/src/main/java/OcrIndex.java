@@ -0,0 +1,353 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Searches the words recognized by OCR, without calling the service again.
+ *
+ * The index is a directory of segment files written by {@link OcrIndexWriter}. Each segment is
+ * memory-mapped, and searched in place: the terms are sorted, so a word is found by binary search
+ * over their bytes, and its postings are read as ints straight from the mapping. Nothing is loaded
+ * when the index is opened, so an index of millions of images opens at once and the operating
+ * system keeps the parts that are searched in memory.
+ *
+ * A segment holds, after a header of four ints (magic, version, image count, term count):
+ * for each image, the offset and length of its path in the strings; for each term, the offset and
+ * length of its bytes in the strings, and the offset and count of its postings; the postings, seven
+ * ints each (image, region, line, left, top, width, height); then the strings, in UTF-8.
+ */
+class OcrIndex implements Closeable {
+  static final int Magic = 0x4F435249;
+
+  static final int Version = 1;
+
+  static final int HeaderSize = 16;
+
+  static final int PostingInts = 7;
+
+  static final String SegmentExtension = ".ocrseg";
+
+  /**
+   * A word found in an image.
+   */
+  static class Posting {
+    String Image;
+    int Region;
+    int Line;
+    int Left;
+    int Top;
+    int Width;
+    int Height;
+
+    @Override
+    public String toString() {
+      return Image + " region " + Region + " line " + Line
+          + " at (" + Left + ", " + Top + "), (" + (Left + Width) + ", " + (Top + Height) + ")";
+    }
+  }
+
+  private static class Segment {
+    final ByteBuffer Buffer;
+    final int Images;
+    final int Terms;
+    final int TermsStart;
+    final int PostingsStart;
+    final int StringsStart;
+
+    Segment(ByteBuffer buffer, File file) throws IOException {
+      this.Buffer = buffer;
+      if (buffer.limit() < HeaderSize || buffer.getInt(0) != Magic || buffer.getInt(4) != Version) {
+        throw new IOException(file + " is not an OCR index segment.");
+      }
+      this.Images = buffer.getInt(8);
+      this.Terms = buffer.getInt(12);
+      this.TermsStart = HeaderSize + 8 * Images;
+      this.PostingsStart = TermsStart + 16 * Terms;
+      // The postings are written in the order of the terms: they end where those of the last term end.
+      int postingInts = Terms == 0 ? 0 : postingOffset(Terms - 1) + PostingInts * postingCount(Terms - 1);
+      this.StringsStart = PostingsStart + 4 * postingInts;
+    }
+
+    int postingOffset(int term) {
+      return Buffer.getInt(TermsStart + 16 * term + 8);
+    }
+
+    int postingCount(int term) {
+      return Buffer.getInt(TermsStart + 16 * term + 12);
+    }
+
+    int posting(int term, int posting, int field) {
+      return Buffer.getInt(PostingsStart + 4 * (postingOffset(term) + PostingInts * posting + field));
+    }
+
+    String image(int image) {
+      return string(HeaderSize + 8 * image);
+    }
+
+    /*
+     * Finds a term by binary search, or returns -1.
+     */
+    int find(byte[] term) {
+      int low = 0;
+      int high = Terms - 1;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        int entry = TermsStart + 16 * middle;
+        int comparison = compare(StringsStart + Buffer.getInt(entry), Buffer.getInt(entry + 4), term);
+        if (comparison < 0) {
+          low = middle + 1;
+        } else if (comparison > 0) {
+          high = middle - 1;
+        } else {
+          return middle;
+        }
+      }
+      return -1;
+    }
+
+    private int compare(int offset, int length, byte[] term) {
+      int common = Math.min(length, term.length);
+      for (int i = 0; i < common; i++) {
+        int difference = (Buffer.get(offset + i) & 0xFF) - (term[i] & 0xFF);
+        if (difference != 0) {
+          return difference;
+        }
+      }
+      return length - term.length;
+    }
+
+    private String string(int entry) {
+      byte[] bytes = new byte[Buffer.getInt(entry + 4)];
+      ByteBuffer source = Buffer.duplicate();
+      source.position(StringsStart + Buffer.getInt(entry));
+      source.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  }
+
+  private final List<Segment> segments;
+
+  private OcrIndex(List<Segment> segments) {
+    this.segments = segments;
+  }
+
+  /**
+   * Maps the segments of an index.
+   * @param directory the directory of the index
+   * @return the index
+   * @throws IOException if a segment cannot be read
+   */
+  public static OcrIndex open(File directory) throws IOException {
+    File[] files = directory.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return file.isFile() && file.getName().endsWith(SegmentExtension);
+      }
+    });
+    List<Segment> segments = new ArrayList<>();
+    if (files != null) {
+      Arrays.sort(files);
+      for (File file : files) {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+          FileChannel channel = input.getChannel();
+          // The mapping stays valid after the channel is closed.
+          segments.add(new Segment(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), file));
+        }
+      }
+    }
+    return new OcrIndex(segments);
+  }
+
+  /**
+   * Finds where a word was recognized.
+   * @param word the word, in any case, with or without surrounding punctuation
+   * @return the places the word was found, by segment and image
+   */
+  public List<Posting> find(String word) {
+    byte[] term = normalize(word).getBytes(StandardCharsets.UTF_8);
+    List<Posting> found = new ArrayList<>();
+    for (Segment segment : segments) {
+      int t = segment.find(term);
+      if (t < 0) {
+        continue;
+      }
+      int lastImage = -1;
+      String image = null;
+      for (int p = 0; p < segment.postingCount(t); p++) {
+        Posting posting = new Posting();
+        int imageId = segment.posting(t, p, 0);
+        if (imageId != lastImage) {
+          image = segment.image(imageId);
+          lastImage = imageId;
+        }
+        posting.Image = image;
+        posting.Region = segment.posting(t, p, 1);
+        posting.Line = segment.posting(t, p, 2);
+        posting.Left = segment.posting(t, p, 3);
+        posting.Top = segment.posting(t, p, 4);
+        posting.Width = segment.posting(t, p, 5);
+        posting.Height = segment.posting(t, p, 6);
+        found.add(posting);
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Counts the times a word was recognized, without reading its postings.
+   * @param word the word
+   * @return the number of times it was found
+   */
+  public long count(String word) {
+    byte[] term = normalize(word).getBytes(StandardCharsets.UTF_8);
+    long count = 0;
+    for (Segment segment : segments) {
+      int t = segment.find(term);
+      if (t >= 0) {
+        count += segment.postingCount(t);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Finds the images in which all the words were recognized.
+   * @param words the words
+   * @return the images, in the order they were indexed
+   */
+  public List<String> findImages(String... words) {
+    List<String> images = new ArrayList<>();
+    if (words.length == 0) {
+      return images;
+    }
+    byte[][] terms = new byte[words.length][];
+    for (int w = 0; w < words.length; w++) {
+      terms[w] = normalize(words[w]).getBytes(StandardCharsets.UTF_8);
+    }
+    for (Segment segment : segments) {
+      int[] matches = null;
+      int size = 0;
+      for (byte[] term : terms) {
+        int t = segment.find(term);
+        if (t < 0) {
+          size = 0;
+          break;
+        }
+        // The postings of a term are in the order of the images, so both lists stay sorted.
+        int[] termImages = new int[segment.postingCount(t)];
+        int termSize = 0;
+        for (int p = 0; p < termImages.length; p++) {
+          int image = segment.posting(t, p, 0);
+          if (termSize == 0 || termImages[termSize - 1] != image) {
+            termImages[termSize++] = image;
+          }
+        }
+        if (matches == null) {
+          matches = termImages;
+          size = termSize;
+        } else {
+          size = intersect(matches, size, termImages, termSize);
+        }
+        if (size == 0) {
+          break;
+        }
+      }
+      for (int i = 0; i < size; i++) {
+        images.add(segment.image(matches[i]));
+      }
+    }
+    return images;
+  }
+
+  /**
+   * @return the images of the index, in the order they were indexed
+   */
+  public List<String> images() {
+    List<String> images = new ArrayList<>();
+    for (Segment segment : segments) {
+      for (int i = 0; i < segment.Images; i++) {
+        images.add(segment.image(i));
+      }
+    }
+    return images;
+  }
+
+  /**
+   * @return the number of segments of the index
+   */
+  public int segments() {
+    return segments.size();
+  }
+
+  /**
+   * Releases the segments. The mappings are unmapped once they are garbage collected.
+   */
+  @Override
+  public void close() {
+    segments.clear();
+  }
+
+  /**
+   * Turns a word into the term it is indexed by: lower case, without surrounding punctuation.
+   * @param word the word
+   * @return the term, which is empty if the word has no letter or digit
+   */
+  static String normalize(String word) {
+    if (word == null) {
+      return "";
+    }
+    int start = 0;
+    int end = word.length();
+    while (start < end && !Character.isLetterOrDigit(word.charAt(start))) {
+      start++;
+    }
+    while (end > start && !Character.isLetterOrDigit(word.charAt(end - 1))) {
+      end--;
+    }
+    return word.substring(start, end).toLowerCase(Locale.ROOT);
+  }
+
+  /*
+   * Compares byte arrays as unsigned bytes, the order of the terms in a segment.
+   */
+  static int compareBytes(byte[] a, byte[] b) {
+    int common = Math.min(a.length, b.length);
+    for (int i = 0; i < common; i++) {
+      int difference = (a[i] & 0xFF) - (b[i] & 0xFF);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return a.length - b.length;
+  }
+
+  /*
+   * Keeps, in the first array, the values found in both sorted arrays; returns their number.
+   */
+  private static int intersect(int[] a, int aSize, int[] b, int bSize) {
+    int i = 0;
+    int j = 0;
+    int size = 0;
+    while (i < aSize && j < bSize) {
+      if (a[i] < b[j]) {
+        i++;
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        a[size++] = a[i];
+        i++;
+        j++;
+      }
+    }
+    return size;
+  }
+}
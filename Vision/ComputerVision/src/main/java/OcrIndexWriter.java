@@ -0,0 +1,263 @@
+import com.microsoft.azure.cognitiveservices.vision.computervision.models.*;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds the inverted index of the words recognized by OCR, for {@link OcrIndex}.
+ *
+ * Words are collected in memory, by term, as postings of primitive ints: the image, the region and
+ * line of the word, and its bounding box. When the postings in memory reach a limit, or when the
+ * writer is flushed, they are written to a new segment file of the index directory, with the terms
+ * sorted so that a term can be found by binary search in the mapped segment.
+ *
+ * An image is indexed once: the paths of the images already in the directory are read when the
+ * writer is opened, and an image added again, by this writer or an earlier one, is skipped.
+ */
+class OcrIndexWriter implements Closeable {
+  private static class Postings {
+    int[] Values = new int[OcrIndex.PostingInts * 4];
+    int Size;
+
+    void add(int image, int region, int line, int[] box) {
+      if (Size + OcrIndex.PostingInts > Values.length) {
+        Values = Arrays.copyOf(Values, Values.length * 2);
+      }
+      Values[Size++] = image;
+      Values[Size++] = region;
+      Values[Size++] = line;
+      Values[Size++] = box[0];
+      Values[Size++] = box[1];
+      Values[Size++] = box[2];
+      Values[Size++] = box[3];
+    }
+  }
+
+  private static class Term {
+    final byte[] Bytes;
+    final Postings Postings;
+
+    Term(byte[] bytes, Postings postings) {
+      this.Bytes = bytes;
+      this.Postings = postings;
+    }
+  }
+
+  private final File directory;
+
+  private final int maxPostings;
+
+  private final Map<String, Postings> terms = new HashMap<>();
+
+  private final List<String> images = new ArrayList<>();
+
+  // The images in the segments and in memory.
+  private final Set<String> indexed = new HashSet<>();
+
+  private int postings;
+
+  /**
+   * @param directory the directory of the index
+   * @param maxPostings the number of words kept in memory before they are written to a segment
+   * @throws IOException if the directory cannot be created, or its segments cannot be read
+   */
+  OcrIndexWriter(File directory, int maxPostings) throws IOException {
+    if (maxPostings < 1) {
+      throw new IllegalArgumentException("maxPostings must be at least 1.");
+    }
+    this.directory = directory;
+    this.maxPostings = maxPostings;
+    Files.createDirectories(directory.toPath());
+    try (OcrIndex index = OcrIndex.open(directory)) {
+      indexed.addAll(index.images());
+    }
+  }
+
+  /**
+   * Adds the words recognized in an image, unless the image is already indexed.
+   * @param image the path or URL of the image
+   * @param result the OCR result of the image
+   * @return false if the image was already indexed, and was skipped
+   * @throws IOException if a segment cannot be written
+   */
+  public synchronized boolean add(String image, OcrResult result) throws IOException {
+    if (!indexed.add(image)) {
+      return false;
+    }
+    int imageId = images.size();
+    images.add(image);
+    if (result.regions() != null) {
+      int[] box = new int[4];
+      List<OcrRegion> regions = result.regions();
+      for (int region = 0; region < regions.size(); region++) {
+        List<OcrLine> lines = regions.get(region).lines();
+        if (lines == null) {
+          continue;
+        }
+        for (int line = 0; line < lines.size(); line++) {
+          List<OcrWord> words = lines.get(line).words();
+          if (words == null) {
+            continue;
+          }
+          for (OcrWord word : words) {
+            String term = OcrIndex.normalize(word.text());
+            if (term.isEmpty()) {
+              continue;
+            }
+            parseBoundingBox(word.boundingBox(), box);
+            Postings termPostings = terms.get(term);
+            if (termPostings == null) {
+              termPostings = new Postings();
+              terms.put(term, termPostings);
+            }
+            termPostings.add(imageId, region, line, box);
+            postings++;
+          }
+        }
+      }
+    }
+    if (postings >= maxPostings) {
+      flush();
+    }
+    return true;
+  }
+
+  /**
+   * Writes the words in memory to a new segment.
+   * @throws IOException if the segment cannot be written
+   */
+  public synchronized void flush() throws IOException {
+    if (images.isEmpty()) {
+      return;
+    }
+
+    Term[] sorted = new Term[terms.size()];
+    int t = 0;
+    long postingInts = 0;
+    long strings = 0;
+    for (Map.Entry<String, Postings> entry : terms.entrySet()) {
+      Term term = new Term(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue());
+      sorted[t++] = term;
+      postingInts += term.Postings.Size;
+      strings += term.Bytes.length;
+    }
+    Arrays.sort(sorted, new Comparator<Term>() {
+      @Override
+      public int compare(Term a, Term b) {
+        return OcrIndex.compareBytes(a.Bytes, b.Bytes);
+      }
+    });
+    byte[][] imageBytes = new byte[images.size()][];
+    for (int i = 0; i < imageBytes.length; i++) {
+      imageBytes[i] = images.get(i).getBytes(StandardCharsets.UTF_8);
+      strings += imageBytes[i].length;
+    }
+    if (OcrIndex.HeaderSize + 8L * imageBytes.length + 16L * sorted.length + 4 * postingInts + strings
+        > Integer.MAX_VALUE) {
+      throw new IOException("The segment would be larger than 2 GB; lower the number of words per segment.");
+    }
+
+    File segment = nextSegment();
+    File temporary = new File(directory, segment.getName() + ".tmp");
+    try (DataOutputStream output =
+             new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16))) {
+      output.writeInt(OcrIndex.Magic);
+      output.writeInt(OcrIndex.Version);
+      output.writeInt(imageBytes.length);
+      output.writeInt(sorted.length);
+
+      // The images and the terms point into the strings, which follow the postings.
+      int stringOffset = 0;
+      for (byte[] image : imageBytes) {
+        output.writeInt(stringOffset);
+        output.writeInt(image.length);
+        stringOffset += image.length;
+      }
+      int postingOffset = 0;
+      for (Term term : sorted) {
+        output.writeInt(stringOffset);
+        output.writeInt(term.Bytes.length);
+        output.writeInt(postingOffset);
+        output.writeInt(term.Postings.Size / OcrIndex.PostingInts);
+        stringOffset += term.Bytes.length;
+        postingOffset += term.Postings.Size;
+      }
+
+      for (Term term : sorted) {
+        for (int i = 0; i < term.Postings.Size; i++) {
+          output.writeInt(term.Postings.Values[i]);
+        }
+      }
+      for (byte[] image : imageBytes) {
+        output.write(image);
+      }
+      for (Term term : sorted) {
+        output.write(term.Bytes);
+      }
+    } catch (IOException e) {
+      Files.deleteIfExists(temporary.toPath());
+      throw e;
+    }
+    Files.move(temporary.toPath(), segment.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+    terms.clear();
+    images.clear();
+    postings = 0;
+  }
+
+  /**
+   * Writes the words in memory to a new segment.
+   */
+  @Override
+  public void close() throws IOException {
+    flush();
+  }
+
+  private File nextSegment() {
+    int number = 0;
+    File segment;
+    do {
+      segment = new File(directory, String.format("segment-%06d%s", number++, OcrIndex.SegmentExtension));
+    } while (segment.exists());
+    return segment;
+  }
+
+  /*
+   * Parses a bounding box "left,top,width,height" into four ints, or zeros if it is missing.
+   */
+  private static void parseBoundingBox(String boundingBox, int[] box) {
+    Arrays.fill(box, 0);
+    if (boundingBox == null) {
+      return;
+    }
+    int field = 0;
+    int value = 0;
+    for (int i = 0; i < boundingBox.length() && field < 4; i++) {
+      char c = boundingBox.charAt(i);
+      if (c >= '0' && c <= '9') {
+        value = value * 10 + (c - '0');
+      } else if (c == ',') {
+        box[field++] = value;
+        value = 0;
+      }
+    }
+    if (field < 4) {
+      box[field] = value;
+    }
+  }
+}
@@ -0,0 +1,242 @@
+import com.microsoft.azure.cognitiveservices.vision.computervision.*;
+import com.microsoft.azure.cognitiveservices.vision.computervision.models.*;
+import com.microsoft.rest.serializer.JacksonAdapter;
+import com.microsoft.rest.serializer.SerializerAdapter;
+
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends images to the Computer Vision API without reading them into a byte array.
+ *
+ * The SDK's withImage(byte[]) needs the whole image on the heap, and the request body copies it
+ * again. Here a local file is streamed from disk into the request as it is sent, through okio's
+ * small segments, so only a few kilobytes of each image are on the heap at a time; an image already
+ * in memory is sent from its ByteBuffer, such as a memory-mapped file. Requests go through the
+ * SDK client's OkHttp client, with its connections, timeouts and retries; since the bodies are
+ * read again on every attempt, a retried request sends the whole image again. Throttled requests
+ * (429) are retried after the delay the service asks for. Responses are read from the stream into
+ * the SDK models with the SDK's Jackson configuration.
+ */
+class StreamingImageUploader {
+  private static final MediaType OctetStream = MediaType.parse("application/octet-stream");
+
+  // The number of times a throttled request is sent, and the longest wait between two of them.
+  private static final int MaxAttempts = 4;
+
+  private static final long MaxRetryDelay = TimeUnit.SECONDS.toMillis(30);
+
+  private final OkHttpClient httpClient;
+
+  private final HttpUrl baseUrl;
+
+  private final String subscriptionKey;
+
+  private final JacksonAdapter adapter;
+
+  /**
+   * Sends the images through the HTTP client of the SDK client, and reads the responses with its
+   * serializer when it is the SDK's Jackson one.
+   * @param client the authenticated client, with its endpoint set
+   * @param subscriptionKey the subscription key
+   */
+  StreamingImageUploader(ComputerVisionClient client, String subscriptionKey) {
+    this(client.restClient().httpClient(), client.endpoint(), subscriptionKey,
+        jacksonAdapter(client.restClient().serializerAdapter()));
+  }
+
+  /**
+   * @param httpClient the HTTP client, to share its connections, threads and interceptors
+   * @param endpoint the Computer Vision endpoint, such as https://westus.api.cognitive.microsoft.com
+   * @param subscriptionKey the subscription key
+   * @param adapter the serializer of the SDK models
+   */
+  StreamingImageUploader(OkHttpClient httpClient, String endpoint, String subscriptionKey, JacksonAdapter adapter) {
+    this.httpClient = httpClient;
+    this.baseUrl = HttpUrl.parse(endpoint);
+    if (baseUrl == null) {
+      throw new IllegalArgumentException("Invalid endpoint: " + endpoint);
+    }
+    this.subscriptionKey = subscriptionKey;
+    this.adapter = adapter;
+  }
+
+  /**
+   * API call: AnalyzeImageInStream, streaming the image from its file.
+   * @param image the image file
+   * @param features the visual features to return
+   * @param language the language of the descriptions and tags, such as "en"
+   * @return the analysis
+   * @throws IOException if the image cannot be read or sent, or the service returns an error
+   */
+  public ImageAnalysis analyze(File image, List<VisualFeatureTypes> features, String language) throws IOException {
+    return send(analyzeUrl(features, language), fileBody(image), ImageAnalysis.class);
+  }
+
+  /**
+   * API call: AnalyzeImageInStream, sending the image from a buffer.
+   * @param image the bytes of the image, from the position to the limit of the buffer
+   * @param features the visual features to return
+   * @param language the language of the descriptions and tags, such as "en"
+   * @return the analysis
+   * @throws IOException if the image cannot be sent, or the service returns an error
+   */
+  public ImageAnalysis analyze(ByteBuffer image, List<VisualFeatureTypes> features, String language) throws IOException {
+    return send(analyzeUrl(features, language), bufferBody(image), ImageAnalysis.class);
+  }
+
+  /**
+   * API call: RecognizePrintedTextInStream, streaming the image from its file.
+   * @param image the image file
+   * @param detectOrientation whether to detect the orientation of the text
+   * @param language the language of the text, such as "en", or "unk" to detect it
+   * @return the recognized text
+   * @throws IOException if the image cannot be read or sent, or the service returns an error
+   */
+  public OcrResult recognizePrintedText(File image, boolean detectOrientation, String language) throws IOException {
+    HttpUrl url = baseUrl.newBuilder()
+        .addPathSegments("vision/v2.0/ocr")
+        .addQueryParameter("detectOrientation", String.valueOf(detectOrientation))
+        .addQueryParameter("language", language)
+        .build();
+    return send(url, fileBody(image), OcrResult.class);
+  }
+
+  /**
+   * A request body that streams a file when it is sent, and again if the request is retried.
+   * @param file the file
+   * @return the body
+   */
+  public RequestBody fileBody(final File file) {
+    return new RequestBody() {
+      @Override
+      public MediaType contentType() {
+        return OctetStream;
+      }
+
+      @Override
+      public long contentLength() {
+        return file.length();
+      }
+
+      @Override
+      public void writeTo(BufferedSink sink) throws IOException {
+        try (Source source = Okio.source(file)) {
+          sink.writeAll(source);
+        }
+      }
+    };
+  }
+
+  /**
+   * A request body that sends the bytes of a buffer, without changing its position.
+   * @param image the bytes, from the position to the limit of the buffer
+   * @return the body
+   */
+  public RequestBody bufferBody(ByteBuffer image) {
+    final ByteBuffer bytes = image.duplicate();
+    return new RequestBody() {
+      @Override
+      public MediaType contentType() {
+        return OctetStream;
+      }
+
+      @Override
+      public long contentLength() {
+        return bytes.remaining();
+      }
+
+      @Override
+      public void writeTo(BufferedSink sink) throws IOException {
+        ByteBuffer source = bytes.duplicate();
+        while (source.hasRemaining()) {
+          sink.write(source);
+        }
+      }
+    };
+  }
+
+  /*
+   * The SDK client declares its serializer as a SerializerAdapter; it is a JacksonAdapter unless
+   * the client was built with another one, in which case the default configuration is used.
+   */
+  private static JacksonAdapter jacksonAdapter(SerializerAdapter<?> adapter) {
+    return adapter instanceof JacksonAdapter ? (JacksonAdapter) adapter : new JacksonAdapter();
+  }
+
+  private HttpUrl analyzeUrl(List<VisualFeatureTypes> features, String language) {
+    StringBuilder visualFeatures = new StringBuilder();
+    for (VisualFeatureTypes feature : features) {
+      if (visualFeatures.length() > 0) {
+        visualFeatures.append(',');
+      }
+      visualFeatures.append(feature.toString());
+    }
+    return baseUrl.newBuilder()
+        .addPathSegments("vision/v2.0/analyze")
+        .addQueryParameter("visualFeatures", visualFeatures.toString())
+        .addQueryParameter("language", language)
+        .build();
+  }
+
+  private <T> T send(HttpUrl url, RequestBody body, Class<T> type) throws IOException {
+    Request request = new Request.Builder()
+        .url(url)
+        .header("Ocp-Apim-Subscription-Key", subscriptionKey)
+        .post(body)
+        .build();
+    for (int attempt = 1; ; attempt++) {
+      try (Response response = httpClient.newCall(request).execute()) {
+        if (response.code() == 429 && attempt < MaxAttempts) {
+          sleep(retryDelay(response.header("Retry-After"), attempt));
+          continue;
+        }
+        if (!response.isSuccessful()) {
+          throw new IOException("Computer Vision returned " + response.code() + " " + response.message()
+              + ": " + response.body().string());
+        }
+        try (InputStream content = response.body().byteStream()) {
+          return adapter.serializer().readValue(content, type);
+        }
+      }
+    }
+  }
+
+  /*
+   * Returns the delay asked for by the service, in seconds, or one that doubles with every attempt.
+   */
+  private static long retryDelay(String retryAfter, int attempt) {
+    if (retryAfter != null) {
+      try {
+        return Math.min(MaxRetryDelay, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim())));
+      } catch (NumberFormatException e) {
+        // An HTTP date: fall back to the exponential delay.
+      }
+    }
+    return Math.min(MaxRetryDelay, 1000L << (attempt - 1));
+  }
+
+  private static void sleep(long millis) throws InterruptedIOException {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to retry a throttled request.");
+    }
+  }
+}